@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.oracle.souffleprof;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Decodes a profile log in the binary event format of souffle.
+ *
+ * A binary log starts with the bytes "SPRB" and a format version, followed
+ * by records of 32 bytes in little-endian order:
+ *   [label id (u32); kind (u32); value (u64); sequence number (u64);
+ *    start time (u64)]
+ * A label is defined once, before its first use, by a record of kind LABEL
+ * whose value is the length of the UTF-8 label text following the record,
+ * e.g. "@t-recursive-rule;path;1;loc;clause;". The label text is the line of
+ * the text log without its value. TIME records carry a duration in seconds
+ * as a double, SIZE records a number of tuples. The start time of a TIME
+ * record is in nanoseconds on the steady clock of the program.
+ *
+ * The text of a label is decoded once into an event template, a record only
+ * fills in the value of its template. Records are therefore applied to the
+ * sink without any tokenizing or interning.
+ *
+ * Souffle writes the events of each thread in batches, so the batches of
+ * different threads interleave. Events are applied to the sink in the order
+ * of their sequence numbers; an event that arrives early waits in a ring
+ * buffer until all events before it have been applied.
+ */
+public class BinaryLogParser {
+
+    /** "SPRB" */
+    private static final int MAGIC = 0x53505242;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    /** Size of a record without the text of a label */
+    private static final int RECORD_SIZE = 32;
+
+    /** Kinds of records */
+    private static final int LABEL = 0;
+    private static final int TIME = 1;
+    private static final int SIZE = 2;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Most events that may wait for an earlier event. Souffle flushes the
+     * events of a thread once they fall far enough behind, so a larger gap
+     * means the log is corrupt or was written by a thread that stalled.
+     */
+    private static final int MAX_PENDING = 1 << 22;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private EventSink sink;
+    private SymbolTable symbols;
+    private RelationFilter filter;
+    private LogTokenizer tokenizer = new LogTokenizer();
+    private ProfileEvent event = new ProfileEvent();
+    /** Events of the labels by id, null for labels that are not events */
+    private ProfileEvent[] templates = new ProfileEvent[64];
+    private int num_labels = 0;
+    private String label = "";
+    /** Bytes read but not decoded yet, kept between calls on a growing log */
+    private byte[] data = new byte[BUFFER_SIZE];
+    private ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+    private int len = 0;
+    private boolean header = true;
+
+    /** Sequence number of the next event to apply */
+    private long next_seq = 0;
+    /** Ring buffer of the events waiting for earlier events, by sequence number */
+    private int[] pending_labels = new int[1024];
+    private int[] pending_kinds = new int[1024];
+    private long[] pending_values = new long[1024];
+    private long[] pending_starts = new long[1024];
+    private boolean[] pending = new boolean[1024];
+    private int num_pending = 0;
+
+    /**
+     * @param symbols symbol table of the sink
+     */
+    public BinaryLogParser(EventSink sink, SymbolTable symbols) {
+        this.sink = sink;
+        this.symbols = symbols;
+    }
+
+    /**
+     * @return whether the file starts with the magic bytes of a binary log
+     */
+    public static boolean isBinaryLog(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            return readMagic(in) == MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return whether the stream starts with the magic bytes of a binary
+     *         log, the stream is reset to its start
+     */
+    public static boolean isBinaryLog(InputStream in) throws IOException {
+        in.mark(4);
+        try {
+            return readMagic(in) == MAGIC;
+        } finally {
+            in.reset();
+        }
+    }
+
+    private static int readMagic(InputStream in) throws IOException {
+        int magic = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = in.read();
+            if (b == -1) {
+                return 0;
+            }
+            magic = (magic << 8) | b;
+        }
+        return magic;
+    }
+
+    /**
+     * Skips the events of all relations but the one selected by the filter.
+     * Labels are checked once, when they are defined.
+     */
+    public void setFilter(RelationFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Decodes the records of a stream until its end. An incomplete last
+     * record, e.g., of a program that was killed, is ignored, and so are
+     * the gaps left by events that were never written.
+     *
+     * @return the number of bytes decoded
+     */
+    public long parse(InputStream in) throws IOException {
+        return parse(in, false);
+    }
+
+    /**
+     * Decodes the records of a stream until its current end.
+     *
+     * @param follow whether the log is still growing, in which case an
+     *        incomplete last record and the events waiting for missing ones
+     *        are kept for the next call on the same stream
+     * @return the number of bytes decoded by this call
+     */
+    public long parse(InputStream in, boolean follow) throws IOException {
+        long parsed = 0;
+        int n;
+        while ((n = in.read(data, len, data.length - len)) != -1) {
+            len += n;
+            int start = 0;
+            if (header) {
+                if (len < HEADER_SIZE) {
+                    continue;
+                }
+                if (Integer.reverseBytes(buf.getInt(0)) != MAGIC) {
+                    throw new IOException("Not a binary profile log");
+                }
+                int version = buf.getInt(4);
+                if (version != VERSION) {
+                    throw new IOException("Unsupported binary log version " + version);
+                }
+                header = false;
+                start = HEADER_SIZE;
+            }
+            start = parseRecords(buf, start, len);
+            if (start > 0) {
+                // keep the incomplete record for the next read
+                System.arraycopy(data, start, data, 0, len - start);
+                parsed += start;
+                len -= start;
+            } else if (len == data.length) {
+                // a label longer than the buffer
+                byte[] larger = new byte[data.length * 2];
+                System.arraycopy(data, 0, larger, 0, len);
+                data = larger;
+                buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+        if (!follow) {
+            applyPending(true);
+        }
+        return parsed;
+    }
+
+    /**
+     * Decodes the complete records stored in buf between start and end.
+     *
+     * @return the position after the last complete record
+     */
+    private int parseRecords(ByteBuffer buf, int start, int end) throws IOException {
+        int p = start;
+        while (end - p >= RECORD_SIZE) {
+            int id = buf.getInt(p);
+            int kind = buf.getInt(p + 4);
+            long value = buf.getLong(p + 8);
+            if (kind == LABEL) {
+                if (value < 0 || value > Integer.MAX_VALUE - RECORD_SIZE) {
+                    throw new IOException("Invalid label length " + value);
+                }
+                if (end - p - RECORD_SIZE < value) {
+                    break;
+                }
+                define(id, buf, p + RECORD_SIZE, p + RECORD_SIZE + (int) value);
+                p += RECORD_SIZE + (int) value;
+                continue;
+            }
+            if (id < 0 || id >= num_labels) {
+                throw new IOException("Undefined label " + id);
+            }
+            long seq = buf.getLong(p + 16);
+            long start_ns = buf.getLong(p + 24);
+            if (seq == next_seq && num_pending == 0) {
+                apply(id, kind, value, start_ns);
+                next_seq++;
+            } else {
+                enqueue(seq, id, kind, value, start_ns);
+            }
+            p += RECORD_SIZE;
+        }
+        return p;
+    }
+
+    /**
+     * @param start_ns start time of a TIME record, -1 if unknown
+     */
+    private void apply(int id, int kind, long value, long start_ns) {
+        ProfileEvent template = templates[id];
+        if (template != null) {
+            double time = kind == TIME ? Double.longBitsToDouble(value) : 0;
+            event.set(template.getKind(), template.getRelation(), template.getLocator(),
+                    template.getRule(), template.getVersion(), time,
+                    kind == SIZE ? value : 0);
+            if (kind == TIME && start_ns >= 0) {
+                double start = start_ns / 1e9;
+                event.setInterval(start, start + time);
+            }
+            sink.process(event);
+        }
+    }
+
+    /**
+     * Stores an event that arrived before some of the events preceding it,
+     * then applies the events that are complete now.
+     */
+    private void enqueue(long seq, int id, int kind, long value, long start_ns) throws IOException {
+        if (seq < next_seq) {
+            throw new IOException("Duplicate sequence number " + seq);
+        }
+        if (seq - next_seq >= pending.length) {
+            grow(seq - next_seq + 1);
+        }
+        int i = (int) seq & (pending.length - 1);
+        if (pending[i]) {
+            throw new IOException("Duplicate sequence number " + seq);
+        }
+        pending[i] = true;
+        pending_labels[i] = id;
+        pending_kinds[i] = kind;
+        pending_values[i] = value;
+        pending_starts[i] = start_ns;
+        num_pending++;
+        applyPending(false);
+    }
+
+    /**
+     * Applies the waiting events in order.
+     *
+     * @param skip_gaps whether events that are missing are skipped
+     */
+    private void applyPending(boolean skip_gaps) {
+        int mask = pending.length - 1;
+        while (num_pending > 0) {
+            int i = (int) next_seq & mask;
+            if (pending[i]) {
+                pending[i] = false;
+                num_pending--;
+                apply(pending_labels[i], pending_kinds[i], pending_values[i], pending_starts[i]);
+            } else if (!skip_gaps) {
+                return;
+            }
+            next_seq++;
+        }
+    }
+
+    private void grow(long needed) throws IOException {
+        if (needed > MAX_PENDING) {
+            throw new IOException("Event " + (next_seq + needed - 1) + " arrived more than "
+                    + MAX_PENDING + " events ahead of event " + next_seq + ", which is still missing");
+        }
+        int capacity = pending.length;
+        while (capacity < needed) {
+            capacity *= 2;
+        }
+        int[] labels = new int[capacity];
+        int[] kinds = new int[capacity];
+        long[] values = new long[capacity];
+        long[] starts = new long[capacity];
+        boolean[] present = new boolean[capacity];
+        int old_mask = pending.length - 1;
+        for (long seq = next_seq; seq < next_seq + pending.length; seq++) {
+            int i = (int) seq & old_mask;
+            if (pending[i]) {
+                int j = (int) seq & (capacity - 1);
+                labels[j] = pending_labels[i];
+                kinds[j] = pending_kinds[i];
+                values[j] = pending_values[i];
+                starts[j] = pending_starts[i];
+                present[j] = true;
+            }
+        }
+        pending_labels = labels;
+        pending_kinds = kinds;
+        pending_values = values;
+        pending_starts = starts;
+        pending = present;
+    }
+
+    /**
+     * Decodes the text of a label into the template of its events.
+     */
+    private void define(int id, ByteBuffer buf, int start, int end) throws IOException {
+        if (id != num_labels) {
+            throw new IOException("Label " + id + " defined out of order");
+        }
+        // the label is the line of the text log up to its value
+        byte[] line = new byte[end - start + 1];
+        for (int k = start; k < end; k++) {
+            line[k - start] = buf.get(k);
+        }
+        line[line.length - 1] = '0';
+        label = new String(line, 0, line.length - 1, UTF8);
+
+        ProfileEvent template = null;
+        ByteBuffer text = ByteBuffer.wrap(line);
+        if (filter == null || filter.accept(text, 0, line.length)) {
+            template = new ProfileEvent();
+            if (!tokenizer.tokenize(text, 0, line.length) || !template.parse(tokenizer, symbols)) {
+                template = null;
+            }
+        }
+        if (num_labels == templates.length) {
+            templates = Arrays.copyOf(templates, 2 * num_labels);
+        }
+        templates[num_labels++] = template;
+    }
+
+    /**
+     * @return the label defined last, for error messages
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.oracle.souffleprof;
+
+import java.util.Arrays;
+
+/**
+ * Profile Data Model
+ *
+ * A growable array of rows, stored in blocks of a fixed number of rows. A
+ * copy shares all blocks with the original, and a shared block is only
+ * copied when one of them changes it. Copying the array therefore costs a
+ * reference per block, and changing the last rows of a long array after a
+ * copy only duplicates their block.
+ *
+ * @param <B> the columns of the rows of a block
+ */
+public class BlockArray<B extends BlockArray.Block<B>> {
+
+    /** Number of rows of a block */
+    public static final int BLOCK_SIZE = 256;
+
+    private static final int SHIFT = 8;
+
+    /**
+     * The columns of the rows of a block, each an array of BLOCK_SIZE
+     * values.
+     */
+    public interface Block<B> {
+
+        /**
+         * @return a copy of this block that is not affected by later changes
+         */
+        B copy();
+    }
+
+    /** A block of default values, copied for each new block */
+    private B empty;
+    private Object[] blocks = new Object[4];
+    /** Number of blocks up to the last one that exists */
+    private int size = 0;
+    /** Generation in which each block was created, older blocks may be shared */
+    private int[] generations = new int[4];
+    private int generation = 1;
+
+    /**
+     * @param empty a block of default values, which is never changed
+     */
+    public BlockArray(B empty) {
+        this.empty = empty;
+    }
+
+    /**
+     * @return a copy of this array that is not affected by later changes
+     */
+    public BlockArray<B> copy() {
+        BlockArray<B> copy = new BlockArray<B>(empty);
+        int capacity = Math.max(4, size);
+        copy.blocks = Arrays.copyOf(blocks, capacity);
+        copy.generations = new int[capacity];
+        copy.size = size;
+        // the blocks of both arrays are shared now
+        generation++;
+        return copy;
+    }
+
+    /**
+     * @return the position of a row in its block
+     */
+    public static int offset(int row) {
+        return row & (BLOCK_SIZE - 1);
+    }
+
+    /**
+     * @return the number of rows up to the end of the last block
+     */
+    public int length() {
+        return size << SHIFT;
+    }
+
+    /**
+     * @return the block of a row for reading, null if no row of the block
+     *         has been changed yet
+     */
+    @SuppressWarnings("unchecked")
+    public B get(int row) {
+        int i = row >> SHIFT;
+        return i < size ? (B) blocks[i] : null;
+    }
+
+    /**
+     * @return the block of a row for changing it, created or copied if needed
+     */
+    @SuppressWarnings("unchecked")
+    public B edit(int row) {
+        int i = row >> SHIFT;
+        if (i >= blocks.length) {
+            int capacity = Math.max(i + 1, 2 * blocks.length);
+            blocks = Arrays.copyOf(blocks, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+        }
+        if (blocks[i] == null) {
+            blocks[i] = empty.copy();
+            generations[i] = generation;
+            size = Math.max(size, i + 1);
+        } else if (generations[i] != generation) {
+            blocks[i] = ((B) blocks[i]).copy();
+            generations[i] = generation;
+        }
+        return (B) blocks[i];
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.oracle.souffleprof;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers the changes of a live run to its subscribers.
+ *
+ * Publishing never blocks the thread that ingests the log: a batch is merged
+ * into the pending batch of each subscription, and a delivery is scheduled
+ * on the notifier's own thread. A subscription receives at most one batch
+ * per interval; everything published in between is coalesced into it.
+ */
+public class ChangeNotifier {
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "souffleprof-notifier");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * A listener with its rate and the changes not delivered yet.
+     */
+    public class Subscription implements Runnable {
+
+        private final ChangeListener listener;
+        private final long interval;
+        private ChangeBatch pending;
+        private boolean scheduled = false;
+        private long last = 0;
+        private volatile boolean cancelled = false;
+
+        private Subscription(ChangeListener listener, long interval) {
+            this.listener = listener;
+            this.interval = interval;
+        }
+
+        private synchronized void publish(ChangeBatch batch) {
+            if (pending == null) {
+                pending = batch.copy();
+            } else {
+                pending.merge(batch);
+            }
+            if (!scheduled) {
+                scheduled = true;
+                long delay = Math.max(0, last + interval - System.currentTimeMillis());
+                executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public void run() {
+            ChangeBatch batch;
+            synchronized (this) {
+                batch = pending;
+                pending = null;
+                scheduled = false;
+                last = System.currentTimeMillis();
+            }
+            if (!cancelled && batch != null) {
+                listener.changed(batch);
+            }
+        }
+
+        /**
+         * Stops the delivery of changes to the listener.
+         */
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+    }
+
+    /**
+     * @param interval minimum time in ms between two deliveries
+     */
+    public Subscription subscribe(ChangeListener listener, long interval) {
+        Subscription subscription = new Subscription(listener, interval);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public boolean hasSubscriptions() {
+        return !subscriptions.isEmpty();
+    }
+
+    public void publish(ChangeBatch batch) {
+        for (Subscription subscription : subscriptions) {
+            subscription.publish(batch);
+        }
+    }
+}
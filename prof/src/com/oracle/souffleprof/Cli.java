@@ -56,11 +56,35 @@ public class Cli {
      * Prints usage of souffle profiler
      */
     public void error() {
-        System.out.println("java -jar souffleprof.jar [-f <file> [-c <command>] [-l]] [-h] [-v]"); 
+        System.out.println("java -jar souffleprof.jar [-f <file> [-c <command>] [-l] [-j <threads>] [-s <iterations>] [-d <ms>]] [-h] [-v]"); 
         System.exit(1); 
     }
 
 
+    /**
+     * Finds the relation a command is restricted to. Only the graphs of
+     * iterations are computed from a single relation; the tables and the
+     * times of rule versions include copy times, which are estimated from
+     * the totals of all relations.
+     *
+     * @return the id or name of the relation, or null if the command needs
+     *         all relations
+     */
+    private static String getRelation(String[] c) {
+        if (!c[0].equals("graph")) {
+            return null;
+        }
+        if (c.length == 3 && !c[1].contains(".")) {
+            return c[1];
+        } else if (c.length == 3 && c[1].charAt(0) == 'C') {
+            return "R" + c[1].split("\\.", 2)[0].substring(1);
+        } else if (c.length == 4 && c[1].equals("ver") && c[2].charAt(0) == 'C'
+                && c[3].equals("tuples")) {
+            return "R" + c[2].split("\\.", 2)[0].substring(1);
+        }
+        return null;
+    }
+
     /**
      * Parse command line parameters 
      * 
@@ -82,6 +106,21 @@ public class Cli {
          */ 
         boolean alive = false;
 
+        /**
+         * Number of threads parsing the log file
+         */
+        int threads = 1;
+
+        /**
+         * Number of iterations kept per relation in streaming mode, 0 to keep all
+         */
+        int window = 0;
+
+        /**
+         * Minimum time in ms between two frames of the dashboard, 0 for the prompt
+         */
+        long dashboard = 0;
+
         int i=0;
 
         while (i < args.length && args[i].startsWith("-")) {
@@ -107,6 +146,28 @@ public class Cli {
                 }
             } else if (arg.equals("-l")) {
                 alive = true; 
+            } else if (arg.equals("-j")) {
+                if (i < args.length && args[i].matches("[1-9][0-9]*")) {
+                    threads = Integer.parseInt(args[i++]);
+                } else {
+                    System.out.println("Parameter for option -j missing or invalid!");
+                    error();
+                }
+            } else if (arg.equals("-s")) {
+                if (i < args.length && args[i].matches("[1-9][0-9]*")) {
+                    window = Integer.parseInt(args[i++]);
+                } else {
+                    System.out.println("Parameter for option -s missing or invalid!");
+                    error();
+                }
+            } else if (arg.equals("-d")) {
+                if (i < args.length && args[i].matches("[1-9][0-9]*")) {
+                    dashboard = Long.parseLong(args[i++]);
+                    alive = true;
+                } else {
+                    System.out.println("Parameter for option -d missing or invalid!");
+                    error();
+                }
             } else {
                 System.out.println("Unknown argument " + args[i]); 
                 error(); 
@@ -116,10 +177,12 @@ public class Cli {
         /**
          * Invoke text user interface
          */
-        if (commands.length > 0) { 
-            new Tui(filename, alive).runCommand(commands); 
+        if (dashboard > 0) {
+            new Tui(filename, true, threads, null, window).runDashboard(dashboard);
+        } else if (commands.length > 0) { 
+            new Tui(filename, alive, threads, getRelation(commands), window).runCommand(commands); 
         } else {
-            new Tui(filename, alive).runProf(); 
+            new Tui(filename, alive, threads, null, window).runProf(); 
         }
     }
 }
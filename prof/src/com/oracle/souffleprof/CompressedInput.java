@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.oracle.souffleprof;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads a gzip or zlib (deflate) compressed file.
+ *
+ * Compressed files are recognized by their magic bytes. The file is
+ * decompressed on a separate thread into blocks, which are handed to the
+ * reader through a small bounded queue, so inflating the next blocks
+ * overlaps with parsing the current one. An error of the decompressing
+ * thread is thrown by the next read.
+ */
+public class CompressedInput extends InputStream {
+
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    /** Number of decompressed blocks waiting to be read */
+    private static final int QUEUE_SIZE = 4;
+
+    /** Marks the end of the decompressed data */
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(QUEUE_SIZE);
+    private final Thread thread;
+    private volatile IOException error;
+    private volatile boolean closed = false;
+    private byte[] block = null;
+    private int block_pos = 0;
+    private int block_end = 0;
+    private boolean done = false;
+
+    private CompressedInput(final File file) throws IOException {
+        final InputStream in = open(new FileInputStream(file));
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                inflate(in);
+            }
+        }, "inflate " + file.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return whether the file starts with the header of a gzip or a zlib
+     *         stream
+     */
+    public static boolean isCompressed(File file) throws IOException {
+        byte[] header = new byte[2];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            if (!readHeader(in, header)) {
+                return false;
+            }
+        } finally {
+            in.close();
+        }
+        return isGzip(header) || isZlib(header);
+    }
+
+    private static boolean readHeader(InputStream in, byte[] header) throws IOException {
+        int len = 0;
+        int n;
+        while (len < header.length && (n = in.read(header, len, header.length - len)) != -1) {
+            len += n;
+        }
+        return len == header.length;
+    }
+
+    private static boolean isGzip(byte[] header) {
+        return (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b;
+    }
+
+    private static boolean isZlib(byte[] header) {
+        // deflate compression method and a valid header check sum
+        int cmf = header[0] & 0xff;
+        int flg = header[1] & 0xff;
+        return (cmf & 0x0f) == 8 && (cmf >> 4) <= 7 && ((cmf << 8) | flg) % 31 == 0;
+    }
+
+    /**
+     * Starts decompressing a file.
+     *
+     * @return the decompressed contents of the file
+     */
+    public static InputStream open(File file) throws IOException {
+        return new CompressedInput(file);
+    }
+
+    private static InputStream open(FileInputStream file) throws IOException {
+        try {
+            byte[] header = new byte[2];
+            boolean gzip = readHeader(file, header) && isGzip(header);
+            file.getChannel().position(0);
+            if (gzip) {
+                return new GZIPInputStream(file, 1 << 16);
+            }
+            return new InflaterInputStream(new BufferedInputStream(file, 1 << 16));
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private void inflate(InputStream in) {
+        try {
+            try {
+                while (!closed) {
+                    byte[] data = new byte[BLOCK_SIZE];
+                    int len = 0;
+                    int n;
+                    while (len < data.length && (n = in.read(data, len, data.length - len)) != -1) {
+                        len += n;
+                    }
+                    if (len == 0) {
+                        break;
+                    }
+                    queue.put(len == data.length ? data : Arrays.copyOf(data, len));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            return;
+        }
+        try {
+            queue.put(END);
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    /**
+     * @return whether data is available, waiting for the next block
+     */
+    private boolean fill() throws IOException {
+        if (block_pos < block_end) {
+            return true;
+        }
+        if (done) {
+            return false;
+        }
+        try {
+            block = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        if (block == END) {
+            done = true;
+            if (error != null) {
+                throw error;
+            }
+            return false;
+        }
+        block_pos = 0;
+        block_end = block.length;
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return block[block_pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, block_end - block_pos);
+        System.arraycopy(block, block_pos, b, off, n);
+        block_pos += n;
+        return n;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        queue.clear();
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.oracle.souffleprof;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Profile Data Model
+ *
+ * Forecast of the fixpoint of the recursive stratum being evaluated. All
+ * relations of a stratum iterate in lockstep, so the deltas and times of
+ * their iterations are summed per iteration. The delta of a converging
+ * stratum usually decays geometrically: a line is fitted to the logarithm
+ * of the delta over the last complete iterations, and its slope gives the
+ * decay per iteration. The runtime of an iteration, including its copy
+ * time, is fitted as a fixed cost plus a cost per new tuple. The fixpoint is
+ * reached with the first iteration in which the projected delta of every
+ * relation is below one tuple.
+ */
+public class Convergence {
+
+    /** Number of the last complete iterations the fits use */
+    private static final int WINDOW = 10;
+    /** Decays above this are not considered converging */
+    private static final double MAX_DECAY = 0.999;
+
+    private List<String> relations = new ArrayList<String>();
+    private int iterations;
+    private long delta;
+    private double decay = Double.NaN;
+    /** Coefficient of determination of the fit of the delta */
+    private double fit = Double.NaN;
+    private long remaining = -1;
+    private double remaining_time = Double.NaN;
+
+    /**
+     * @return the forecast of the stratum being evaluated, or null if no
+     *         recursive stratum is being evaluated
+     */
+    public static Convergence analyze(ProgramRun run) {
+        List<Relation> scc = run.getActiveStratum();
+        if (scc.isEmpty()) {
+            return null;
+        }
+        Convergence result = new Convergence();
+        // the iterations all relations have completed
+        int first = 0;
+        int end = Integer.MAX_VALUE;
+        for (Relation rel : scc) {
+            IterationTable table = rel.getIterationTable();
+            result.relations.add(rel.getName());
+            first = Math.max(first, table.first());
+            end = Math.min(end, rel.isReady() ? table.size() : table.size() - 1);
+        }
+        result.iterations = Math.max(0, end);
+        if (end <= first) {
+            return result;
+        }
+        int start = Math.max(first, end - WINDOW);
+        int n = end - start;
+        long[] deltas = new long[n];
+        double[] times = new double[n];
+        // the stratum ends when no relation has new tuples
+        long largest = 0;
+        for (Relation rel : scc) {
+            IterationTable table = rel.getIterationTable();
+            largest = Math.max(largest, table.getNum_tuples(end - 1));
+            for (int i = 0; i < n; i++) {
+                deltas[i] += table.getNum_tuples(start + i);
+                times[i] += table.getRuntime(start + i) + table.getCopy_time(start + i);
+            }
+        }
+        result.delta = deltas[n - 1];
+        if (result.delta == 0) {
+            // the last iteration found no new tuples
+            result.remaining = 0;
+            result.remaining_time = 0;
+            return result;
+        }
+        result.fitDelta(deltas);
+        if (result.decay < MAX_DECAY) {
+            result.remaining = (long) Math.floor(Math.log(largest) / -Math.log(result.decay)) + 1;
+            result.remaining_time = result.project(deltas, times);
+        }
+        return result;
+    }
+
+    /**
+     * Fits the logarithm of the positive deltas by least squares.
+     */
+    private void fitDelta(long[] deltas) {
+        int n = 0;
+        double sx = 0, sy = 0, sxx = 0, sxy = 0, syy = 0;
+        for (int i = 0; i < deltas.length; i++) {
+            if (deltas[i] > 0) {
+                double y = Math.log(deltas[i]);
+                n++;
+                sx += i;
+                sy += y;
+                sxx += (double) i * i;
+                sxy += i * y;
+                syy += y * y;
+            }
+        }
+        if (n < 3) {
+            return;
+        }
+        double vx = n * sxx - sx * sx;
+        double vy = n * syy - sy * sy;
+        double slope = (n * sxy - sx * sy) / vx;
+        decay = Math.exp(slope);
+        fit = vy > 0 ? (n * sxy - sx * sy) * (n * sxy - sx * sy) / (vx * vy) : 1;
+    }
+
+    /**
+     * Fits the runtime of an iteration as a + b * delta and sums it over the
+     * projected deltas of the remaining iterations.
+     */
+    private double project(long[] deltas, double[] times) {
+        int n = deltas.length;
+        double sx = 0, sy = 0, sxx = 0, sxy = 0;
+        for (int i = 0; i < n; i++) {
+            sx += deltas[i];
+            sy += times[i];
+            sxx += (double) deltas[i] * deltas[i];
+            sxy += deltas[i] * times[i];
+        }
+        double a = sy / n;
+        double b = 0;
+        double vx = n * sxx - sx * sx;
+        if (vx > 0) {
+            b = (n * sxy - sx * sy) / vx;
+            a = (sy - b * sx) / n;
+        }
+        // a negative cost is an artifact of noise
+        if (b < 0) {
+            b = 0;
+            a = sy / n;
+        } else if (a < 0) {
+            a = 0;
+            b = sx > 0 ? sy / sx : 0;
+        }
+        // the sum of a geometric series of deltas after the last iteration
+        double tuples = delta * decay * (1 - Math.pow(decay, remaining)) / (1 - decay);
+        return remaining * a + b * tuples;
+    }
+
+    /**
+     * @return the names of the relations of the stratum
+     */
+    public List<String> getRelations() {
+        return relations;
+    }
+
+    /**
+     * @return the number of complete iterations
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the new tuples of the last complete iteration
+     */
+    public long getDelta() {
+        return delta;
+    }
+
+    /**
+     * @return the factor the delta shrinks by per iteration, NaN if unknown
+     */
+    public double getDecay() {
+        return decay;
+    }
+
+    /**
+     * @return how well the decay fits the deltas, between 0 and 1
+     */
+    public double getFit() {
+        return fit;
+    }
+
+    /**
+     * @return the estimated number of iterations to the fixpoint, or -1 if
+     *         the delta does not shrink
+     */
+    public long getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * @return the estimated time in seconds to the fixpoint, NaN if unknown
+     */
+    public double getRemainingTime() {
+        return remaining_time;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.oracle.souffleprof;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Full-screen view of a live run.
+ *
+ * The dashboard shows the totals of the run, the forecast of the fixpoint of
+ * the running recursive stratum, and the top relations and rules by total
+ * time, redrawn in place whenever a batch of changes is delivered, at most
+ * once per interval. Only the lines of the screen that differ from
+ * the previous frame are written, so the amount of output per frame does not
+ * grow with the program. The rows come from the rankings a live run
+ * maintains, so a frame costs about the same whatever the size of the log.
+ */
+public class Dashboard implements ChangeListener {
+
+    private static final String ESC = "\033[";
+    /** Number of relations and rules shown */
+    private static final int ROWS = 10;
+    /** Columns a line is cut to */
+    private static final int WIDTH = 120;
+
+    private Reader reader;
+    private ProgramRun run;
+    private String file;
+    private long interval;
+    private int precision;
+    private PrintStream out = System.out;
+    /** Lines currently on the screen */
+    private List<String> screen = new ArrayList<String>();
+    private boolean stopped = false;
+    private long start;
+    private long last_time;
+    private long last_tuples;
+    private long last_events;
+    private String tuple_rate = "-";
+    private String event_rate = "-";
+
+    /**
+     * @param run the first snapshot of the live run of the reader
+     * @param interval minimum time in ms between two frames
+     */
+    public Dashboard(Reader reader, ProgramRun run, String file, long interval, int precision) {
+        this.reader = reader;
+        this.run = run;
+        this.file = file;
+        this.interval = interval;
+        this.precision = precision;
+    }
+
+    /**
+     * Shows the dashboard until 'q' is entered or the input ends.
+     */
+    public void run() {
+        start = System.currentTimeMillis();
+        last_time = start;
+        last_tuples = run.getTotNumTuples();
+        last_events = run.getVersion();
+        out.print(ESC + "?25l" + ESC + "2J");
+        draw(run);
+        ChangeNotifier.Subscription subscription = reader.subscribe(this, interval);
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().equals("q") || line.trim().equals("quit")) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // stop on a closed input
+        } finally {
+            subscription.cancel();
+            synchronized (this) {
+                stopped = true;
+                out.print(ESC + (screen.size() + 1) + ";1H" + ESC + "J" + ESC + "?25h");
+                out.flush();
+            }
+        }
+    }
+
+    @Override
+    public void changed(ChangeBatch batch) {
+        draw(batch.getSnapshot());
+    }
+
+    private synchronized void draw(ProgramRun snapshot) {
+        if (stopped) {
+            return;
+        }
+        this.run = snapshot;
+        long now = System.currentTimeMillis();
+        if (now > last_time) {
+            tuple_rate = run.formatNum(precision,
+                    (run.getTotNumTuples() - last_tuples) * 1000 / (now - last_time));
+            event_rate = run.formatNum(precision, (run.getVersion() - last_events) * 1000 / (now - last_time));
+            last_time = now;
+            last_tuples = run.getTotNumTuples();
+            last_events = run.getVersion();
+        }
+        update(render(now));
+    }
+
+    private List<String> render(long now) {
+        List<String> lines = new ArrayList<String>();
+        lines.add(" SouffleProf live: " + file);
+        lines.add(String.format(" Runtime: %s   Elapsed: %s   Tuples: %s   Tuples/s: %s   Events/s: %s",
+                run.getRuntime(), run.formatTime((now - start) / 1000.0),
+                run.formatNum(precision, run.getTotNumTuples()), tuple_rate, event_rate));
+        lines.add(cut(formatConvergence(Convergence.analyze(run))));
+        lines.add("");
+
+        DataRow[] relations = run.getTopRelations(ROWS);
+        if (relations == null) {
+            relations = DataComparator.top(run.getRelTable(), DataComparator.TIME, ROWS);
+        }
+        lines.add(" ----- Top Relations -----");
+        lines.add(String.format("%8s%8s%8s%8s%15s%6s %s", "TOT_T", "NREC_T", "REC_T", "COPY_T",
+                "TUPLES", "ID", "NAME"));
+        for (DataRow row : relations) {
+            lines.add(format(row, row.getName()));
+        }
+        lines.add("");
+
+        DataRow[] rules = run.getTopRules(ROWS);
+        if (rules == null) {
+            rules = DataComparator.top(run.getRulTable(), DataComparator.TIME, ROWS);
+        }
+        lines.add(" ----- Top Rules -----");
+        lines.add(String.format("%8s%8s%8s%8s%15s%6s %s", "TOT_T", "NREC_T", "REC_T", "COPY_T",
+                "TUPLES", "ID", "RELATION"));
+        for (DataRow row : rules) {
+            lines.add(format(row, row.getRelation()));
+        }
+        lines.add("");
+        lines.add(" Enter q to quit.");
+        return lines;
+    }
+
+    private String formatConvergence(Convergence convergence) {
+        if (convergence == null) {
+            return " Stratum: -";
+        }
+        String eta = convergence.getRemaining() < 0 ? "-"
+                : convergence.getRemaining() + " iterations, " + run.formatTime(convergence.getRemainingTime());
+        StringBuilder relations = new StringBuilder();
+        for (String name : convergence.getRelations()) {
+            relations.append(relations.length() > 0 ? "," : "").append(name);
+        }
+        return String.format(" Iteration: %d   Delta: %s   ETA: %s   Stratum: %s", convergence.getIterations(),
+                run.formatNum(precision, convergence.getDelta()), eta, relations);
+    }
+
+    private String format(DataRow row, String name) {
+        return cut(String.format("%8s%8s%8s%8s%15s%6s %s", run.formatTime(row.getTot_time()),
+                run.formatTime(row.getNonrec_time()), run.formatTime(row.getRec_time()),
+                run.formatTime(row.getCopy_time()), run.formatNum(precision, row.getNum_tuples()),
+                row.getId(), name));
+    }
+
+    private static String cut(String line) {
+        return line.length() > WIDTH ? line.substring(0, WIDTH) : line;
+    }
+
+    /**
+     * Writes the lines that differ from the screen, each in place.
+     */
+    private void update(List<String> lines) {
+        StringBuilder frame = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            if (i >= screen.size() || !lines.get(i).equals(screen.get(i))) {
+                frame.append(ESC).append(i + 1).append(";1H").append(lines.get(i)).append(ESC).append('K');
+            }
+        }
+        if (lines.size() < screen.size()) {
+            frame.append(ESC).append(lines.size() + 1).append(";1H").append(ESC).append('J');
+        }
+        // the cursor rests below the dashboard, where the input is echoed
+        frame.append(ESC).append(lines.size() + 1).append(";1H");
+        out.print(frame);
+        out.flush();
+        screen = lines;
+    }
+}
@@ -28,60 +28,83 @@
 
 package com.oracle.souffleprof;
 
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.PriorityQueue;
 
 /**
- * Compare operation for profile data for sorting data according to a key
+ * Compare operation for profile data for sorting data according to a key.
+ * Times, tuples and performance are compared in descending order; rows
+ * without quantiles come last.
  */
-public enum DataComparator implements Comparator<Object[]> {
+public enum DataComparator implements Comparator<DataRow> {
     TIME {
-        public int compare(Object[] a, Object[] b) {
-        	return Double.compare((Double)b[0], (Double)a[0]);
+        public int compare(DataRow a, DataRow b) {
+            return Double.compare(b.getTot_time(), a.getTot_time());
         }},
     NR_T {
-        public int compare(Object[] a, Object[] b) {
-        	return Double.compare((Double)b[1], (Double)a[1]);
+        public int compare(DataRow a, DataRow b) {
+            return Double.compare(b.getNonrec_time(), a.getNonrec_time());
         }},
     R_T {
-        public int compare(Object[] a, Object[] b) {
-        	return Double.compare((Double)b[2], (Double)a[2]);
-        }},     
+        public int compare(DataRow a, DataRow b) {
+            return Double.compare(b.getRec_time(), a.getRec_time());
+        }},
     C_T {
-        public int compare(Object[] a, Object[] b) {
-        	return Double.compare((Double)b[3], (Double)a[3]);
+        public int compare(DataRow a, DataRow b) {
+            return Double.compare(b.getCopy_time(), a.getCopy_time());
         }},
     TUP {
-        public int compare(Object[] a, Object[] b) {
-        	return Long.compare((Long)b[4], (Long)a[4]);
+        public int compare(DataRow a, DataRow b) {
+            return Long.compare(b.getNum_tuples(), a.getNum_tuples());
         }},
     NAME {
-        public int compare(Object[] a, Object[] b) {
-        	String aStr = (String)a[5];
-        	String bStr = (String)b[5];
-        	return Integer.valueOf(aStr.compareTo(bStr));
+        public int compare(DataRow a, DataRow b) {
+            return a.getName().compareTo(b.getName());
         }},
     ID {
-        public int compare(Object[] a, Object[] b) {
-        	String aStr = (String)a[6];
-        	String bStr = (String)b[6];
-        	return Integer.valueOf(aStr.compareTo(bStr));
+        public int compare(DataRow a, DataRow b) {
+            return a.getId().compareTo(b.getId());
         }},
     PER {
-        public int compare(Object[] a, Object[] b) {
-        	return Double.compare((Double)b[8], (Double)a[8]);
+        public int compare(DataRow a, DataRow b) {
+            return Double.compare(b.getPerformance(), a.getPerformance());
+        }},
+    P50 {
+        public int compare(DataRow a, DataRow b) {
+            return compareQuantile(a.getP50(), b.getP50());
+        }},
+    P90 {
+        public int compare(DataRow a, DataRow b) {
+            return compareQuantile(a.getP90(), b.getP90());
+        }},
+    P99 {
+        public int compare(DataRow a, DataRow b) {
+            return compareQuantile(a.getP99(), b.getP99());
+        }},
+    MAX {
+        public int compare(DataRow a, DataRow b) {
+            return compareQuantile(a.getMax(), b.getMax());
         }};
 
-        public static Comparator<Object[]> decending(final Comparator<Object[]> other) {
-            return new Comparator<Object[]>() {
-                public int compare(Object[] o1, Object[] o2) {
+        private static int compareQuantile(double a, double b) {
+            if (Double.isNaN(a) || Double.isNaN(b)) {
+                return Boolean.compare(Double.isNaN(a), Double.isNaN(b));
+            }
+            return Double.compare(b, a);
+        }
+
+        public static Comparator<DataRow> decending(final Comparator<DataRow> other) {
+            return new Comparator<DataRow>() {
+                public int compare(DataRow o1, DataRow o2) {
                     return -1 * other.compare(o1, o2);
                 }
             };
         }
 
-        public static Comparator<Object[]> getComparator(final int sortDir, final DataComparator... multipleOptions) {
-            return new Comparator<Object[]>() {
-                public int compare(Object[] o1, Object[] o2) {
+        public static Comparator<DataRow> getComparator(final int sortDir, final DataComparator... multipleOptions) {
+            return new Comparator<DataRow>() {
+                public int compare(DataRow o1, DataRow o2) {
                     for (DataComparator option : multipleOptions) {
                         int result = option.compare(o1, o2);
                         if (result != 0) {
@@ -92,4 +115,31 @@ public enum DataComparator implements Comparator<Object[]> {
                 }
             };
         }
+
+        /**
+         * Selects the first rows in the order of a comparator with a heap
+         * bounded to k rows, without sorting the whole table.
+         *
+         * @return the first k rows, in order
+         */
+        public static DataRow[] top(DataRow[] rows, Comparator<DataRow> order, int k) {
+            if (k <= 0) {
+                return new DataRow[0];
+            }
+            // the heap has the last of the selected rows at its head
+            PriorityQueue<DataRow> heap = new PriorityQueue<DataRow>(k, Collections.reverseOrder(order));
+            for (DataRow row : rows) {
+                if (heap.size() < k) {
+                    heap.add(row);
+                } else if (order.compare(row, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(row);
+                }
+            }
+            DataRow[] result = new DataRow[heap.size()];
+            for (int i = result.length - 1; i >= 0; i--) {
+                result[i] = heap.poll();
+            }
+            return result;
+        }
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.oracle.souffleprof;
+
+/**
+ * Profile Data Model
+ * 
+ * A row of the relation, rule or version table with the aggregated
+ * measurements stored as primitives.
+ */
+public class DataRow {
+
+    private double tot_time = 0;
+    private double nonrec_time = 0;
+    private double rec_time = 0;
+    private double copy_time = 0;
+    private long num_tuples = 0;
+    private String name;
+    private String id;
+    private String relation;
+    private int version = 0;
+    private String locator;
+    /** Quantiles of the runtime per iteration, NaN if not recursive */
+    private double p50 = Double.NaN;
+    private double p90 = Double.NaN;
+    private double p99 = Double.NaN;
+    private double max = Double.NaN;
+
+    public DataRow(String name, String id) {
+        this.name = name;
+        this.id = id;
+    }
+
+    /**
+     * Sets the total time to the sum of the non-recursive, recursive and
+     * copy time.
+     */
+    public void updateTot_time() {
+        this.tot_time = nonrec_time + rec_time + copy_time;
+    }
+
+    public double getTot_time() {
+        return tot_time;
+    }
+
+    public double getNonrec_time() {
+        return nonrec_time;
+    }
+
+    public void setNonrec_time(double nonrec_time) {
+        this.nonrec_time = nonrec_time;
+    }
+
+    public double getRec_time() {
+        return rec_time;
+    }
+
+    public void setRec_time(double rec_time) {
+        this.rec_time = rec_time;
+    }
+
+    public double getCopy_time() {
+        return copy_time;
+    }
+
+    public void setCopy_time(double copy_time) {
+        this.copy_time = copy_time;
+    }
+
+    public long getNum_tuples() {
+        return num_tuples;
+    }
+
+    public void setNum_tuples(long num_tuples) {
+        this.num_tuples = num_tuples;
+    }
+
+    /**
+     * @return new tuples per second of total time
+     */
+    public double getPerformance() {
+        if (tot_time != 0.0) {
+            return num_tuples / tot_time;
+        }
+        return num_tuples / 1.0;
+    }
+
+    /**
+     * Sets the quantiles of the runtime per iteration.
+     */
+    public void setRuntimes(QuantileSketch runtimes) {
+        p50 = runtimes.getQuantile(0.5);
+        p90 = runtimes.getQuantile(0.9);
+        p99 = runtimes.getQuantile(0.99);
+        max = runtimes.getMax();
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return name of the relation of a rule, null for relations
+     */
+    public String getRelation() {
+        return relation;
+    }
+
+    public void setRelation(String relation) {
+        this.relation = relation;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    /**
+     * @return the source locator, or null if unknown
+     */
+    public String getLocator() {
+        return locator;
+    }
+
+    public void setLocator(String locator) {
+        this.locator = locator;
+    }
+}
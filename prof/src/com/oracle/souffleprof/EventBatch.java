@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.oracle.souffleprof;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A sequence of profile events stored column by column.
+ *
+ * Batches decouple decoding from applying events: a batch can be filled on
+ * one thread and replayed into the data model on another, in the original
+ * order of the events. The symbol ids of the events refer to the symbol
+ * table of the batch and are translated when the batch is replayed into a
+ * sink with a different table.
+ */
+public class EventBatch implements EventSink {
+
+    private static final ProfileEvent.Kind[] KINDS = ProfileEvent.Kind.values();
+
+    private SymbolTable symbols;
+    private int size = 0;
+    private byte[] kinds;
+    private int[] relations;
+    private int[] locators;
+    private int[] rules;
+    private int[] versions;
+    private double[] times;
+    private long[] tuples;
+    private double[] starts;
+    private double[] ends;
+
+    /**
+     * @param symbols symbol table of the events
+     */
+    public EventBatch(SymbolTable symbols) {
+        this(symbols, 1024);
+    }
+
+    public EventBatch(SymbolTable symbols, int capacity) {
+        this.symbols = symbols;
+        kinds = new byte[capacity];
+        relations = new int[capacity];
+        locators = new int[capacity];
+        rules = new int[capacity];
+        versions = new int[capacity];
+        times = new double[capacity];
+        tuples = new long[capacity];
+        starts = new double[capacity];
+        ends = new double[capacity];
+    }
+
+    /**
+     * Appends a copy of the event.
+     */
+    @Override
+    public void process(ProfileEvent event) {
+        if (size == kinds.length) {
+            grow();
+        }
+        kinds[size] = (byte) event.getKind().ordinal();
+        relations[size] = event.getRelation();
+        locators[size] = event.getLocator();
+        rules[size] = event.getRule();
+        versions[size] = event.getVersion();
+        times[size] = event.getTime();
+        tuples[size] = event.getTuples();
+        starts[size] = event.getStart();
+        ends[size] = event.getEnd();
+        size++;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, kinds.length * 2);
+        kinds = Arrays.copyOf(kinds, capacity);
+        relations = Arrays.copyOf(relations, capacity);
+        locators = Arrays.copyOf(locators, capacity);
+        rules = Arrays.copyOf(rules, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        times = Arrays.copyOf(times, capacity);
+        tuples = Arrays.copyOf(tuples, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+    }
+
+    /**
+     * Feeds all events of this batch in order into the sink.
+     * 
+     * @param target symbol table of the sink
+     */
+    public void replay(EventSink sink, SymbolTable target) {
+        int[] map = null;
+        if (target != symbols) {
+            map = new int[symbols.size()];
+            Arrays.fill(map, ProfileEvent.NONE);
+        }
+        ProfileEvent event = new ProfileEvent();
+        for (int i = 0; i < size; i++) {
+            event.set(KINDS[kinds[i]], translate(relations[i], map, target),
+                    translate(locators[i], map, target), translate(rules[i], map, target),
+                    versions[i], times[i], tuples[i]);
+            event.setInterval(starts[i], ends[i]);
+            sink.process(event);
+        }
+    }
+
+    private int translate(int symbol, int[] map, SymbolTable target) {
+        if (map == null || symbol == ProfileEvent.NONE) {
+            return symbol;
+        }
+        if (map[symbol] == ProfileEvent.NONE) {
+            byte[] data = symbols.getBytes(symbol);
+            map[symbol] = target.intern(ByteBuffer.wrap(data), 0, data.length);
+        }
+        return map[symbol];
+    }
+
+    /**
+     * Removes all events, keeping the allocated capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
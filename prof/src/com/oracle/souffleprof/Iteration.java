@@ -28,73 +28,36 @@
 
 package com.oracle.souffleprof;
 
-import java.io.Serializable;
-import java.util.HashMap;
 import java.util.Map;
 
 /***
  * Profile Data Model
  * 
- * Represents recursive profile data 
+ * Represents recursive profile data. An iteration is a view on one row of
+ * the iteration table of its relation.
  */
 
-public class Iteration implements Serializable {
+public class Iteration {
 
-	private static final long serialVersionUID = 4513587123648922999L;
-	private double runtime = 0;
-	private long num_tuples = 0;
-	private double copy_time = 0;
-	private String locator = "";
-	private long prev_num_tuples = 0;
+	private IterationTable table;
+	private int index;
 
-	private Map<String, RuleRecursive> rul_rec_map;
-
-	public Iteration() {
-		this.rul_rec_map = new HashMap<String, RuleRecursive>();
-	}
-
-	public void addRule(String[] data, String rec_id) {
-		String strTemp = data[4] + data[3] + data[2];
-
-		if (data[0].charAt(0) == 't') {
-			boolean exists = false;
-
-			for (String name : rul_rec_map.keySet()) {
-				if (name.equals(strTemp)) {
-					RuleRecursive rul_rec = rul_rec_map.get(strTemp);
-					rul_rec.setRuntime(Double.parseDouble(data[5])
-							+ rul_rec.getRuntime());
-					exists = true;
-				}
-			}
-			if (!exists) {
-				RuleRecursive rul_rec = new RuleRecursive(data[4],
-						Integer.parseInt(data[2]), rec_id);
-				rul_rec.setRuntime(Double.parseDouble(data[5]));
-				rul_rec.setLocator(data[3]);
-				rul_rec_map.put(strTemp, rul_rec);
-			}
-
-		} else if (data[0].charAt(0) == 'n') {
-			RuleRecursive rul_rec = rul_rec_map.get(strTemp);
-			assert rul_rec != null : "missing t tag";
-			rul_rec.setNum_tuples(Long.parseLong(data[5]) - prev_num_tuples);
-			this.prev_num_tuples = Long.parseLong(data[5]);
-			rul_rec_map.put(strTemp, rul_rec);
-		}
+	public Iteration(IterationTable table, int index) {
+		this.table = table;
+		this.index = index;
 	}
 
-	public Map<String, RuleRecursive> getRul_rec() {
-		return rul_rec_map;
+	public Map<RuleKey, RuleRecursive> getRul_rec() {
+		return table.getRules(index);
 	}
 
 	@Override
 	public String toString() {
 
 		StringBuilder res = new StringBuilder();
-		res.append("" + runtime + "," + num_tuples + "," + copy_time + ",");
+		res.append("" + getRuntime() + "," + getNum_tuples() + "," + getCopy_time() + ",");
 		res.append(" recRule:");
-		for (RuleRecursive rul : rul_rec_map.values()) {
+		for (RuleRecursive rul : getRul_rec().values()) {
 			res.append(rul.toString());
 		}
 		res.append("\n");
@@ -102,34 +65,49 @@ public class Iteration implements Serializable {
 	}
 
 	public double getRuntime() {
-		return runtime;
-	}
-
-	public void setRuntime(double runtime) {
-		this.runtime = runtime;
+		return table.getRuntime(index);
 	}
 
 	public long getNum_tuples() {
-		return num_tuples;
-	}
-
-	public void setNum_tuples(long num_tuples) {
-		this.num_tuples = num_tuples;
+		return table.getNum_tuples(index);
 	}
 
 	public double getCopy_time() {
-		return copy_time;
-	}
-
-	public void setCopy_time(double copy_time) {
-		this.copy_time = copy_time;
+		return table.getCopy_time(index);
 	}
 
 	public String getLocator() {
-		return locator;
+		return table.getLocator(index);
 	}
 
-	public void setLocator(String locator) {
-		this.locator = locator;
+	/**
+	 * Identifies a version of a recursive rule by the symbols of its clause
+	 * text and its source locator.
+	 */
+	public static final class RuleKey {
+
+		private final int name;
+		private final int locator;
+		private final int version;
+
+		public RuleKey(int name, int locator, int version) {
+			this.name = name;
+			this.locator = locator;
+			this.version = version;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof RuleKey)) {
+				return false;
+			}
+			RuleKey other = (RuleKey) o;
+			return name == other.name && locator == other.locator && version == other.version;
+		}
+
+		@Override
+		public int hashCode() {
+			return (name * 31 + locator) * 31 + version;
+		}
 	}
 }
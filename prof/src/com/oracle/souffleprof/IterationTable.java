@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.oracle.souffleprof;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Profile Data Model
+ * 
+ * Columnar storage of the iterations of a recursive relation. Runtime,
+ * number of new tuples and copy time are kept in primitive arrays indexed
+ * by iteration; each version of a recursive rule keeps its own series.
+ * Iteration objects are merely views on a row of this table.
+ *
+ * The arrays are split into blocks that a copy shares, so a snapshot of a
+ * relation with many iterations only duplicates the block of the iteration
+ * that changes next.
+ *
+ * In streaming mode only a window of the most recent iterations is kept, in
+ * a ring indexed by the iteration number modulo the window. The running
+ * totals still cover all iterations, so memory does not grow with the
+ * number of iterations while the tables stay exact.
+ */
+public class IterationTable {
+
+    private SymbolTable symbols;
+    private int size = 0;
+    /** Number of iterations kept, 0 to keep all */
+    private int window = 0;
+    private BlockArray<Rows> rows = new BlockArray<Rows>(new Rows());
+    private long prev_num_tuples = 0;
+
+    /** Running totals over all iterations */
+    private double tot_runtime = 0;
+    private long tot_num_tuples = 0;
+    private double tot_copy_time = 0;
+    private long tot_rule_tuples = 0;
+    /** Distribution of the runtime per iteration */
+    private QuantileSketch runtimes = new QuantileSketch();
+
+    private List<RuleSeries> series;
+    private Map<Iteration.RuleKey, RuleSeries> series_map;
+
+    /**
+     * The columns of a block of iterations.
+     */
+    private static final class Rows implements BlockArray.Block<Rows> {
+        final double[] runtime = new double[BlockArray.BLOCK_SIZE];
+        final long[] num_tuples = new long[BlockArray.BLOCK_SIZE];
+        final double[] copy_time = new double[BlockArray.BLOCK_SIZE];
+        final int[] locator = new int[BlockArray.BLOCK_SIZE];
+
+        @Override
+        public Rows copy() {
+            Rows rows = new Rows();
+            System.arraycopy(runtime, 0, rows.runtime, 0, BlockArray.BLOCK_SIZE);
+            System.arraycopy(num_tuples, 0, rows.num_tuples, 0, BlockArray.BLOCK_SIZE);
+            System.arraycopy(copy_time, 0, rows.copy_time, 0, BlockArray.BLOCK_SIZE);
+            System.arraycopy(locator, 0, rows.locator, 0, BlockArray.BLOCK_SIZE);
+            return rows;
+        }
+    }
+
+    public IterationTable(SymbolTable symbols) {
+        this.symbols = symbols;
+        this.series = new ArrayList<RuleSeries>();
+        this.series_map = new HashMap<Iteration.RuleKey, RuleSeries>();
+    }
+
+    /**
+     * @return a copy of this table that is not affected by later changes
+     */
+    public IterationTable copy() {
+        IterationTable table = new IterationTable(symbols);
+        table.size = size;
+        table.window = window;
+        table.rows = rows.copy();
+        table.prev_num_tuples = prev_num_tuples;
+        table.tot_runtime = tot_runtime;
+        table.tot_num_tuples = tot_num_tuples;
+        table.tot_copy_time = tot_copy_time;
+        table.tot_rule_tuples = tot_rule_tuples;
+        table.runtimes = runtimes.copy();
+        for (Map.Entry<Iteration.RuleKey, RuleSeries> entry : series_map.entrySet()) {
+            table.series_map.put(entry.getKey(), entry.getValue().copy());
+        }
+        for (RuleSeries rul : series) {
+            table.series.add(table.series_map.get(new Iteration.RuleKey(rul.getNameSymbol(),
+                    rul.getLocatorSymbol(), rul.getVersion())));
+        }
+        return table;
+    }
+
+    public void write(SnapshotFile.Output out) throws IOException {
+        int n = slots();
+        double[] runtime = new double[n];
+        long[] num_tuples = new long[n];
+        double[] copy_time = new double[n];
+        int[] locator = new int[n];
+        for (int i = 0; i < n; i++) {
+            Rows block = rows.get(i);
+            int j = BlockArray.offset(i);
+            runtime[i] = block.runtime[j];
+            num_tuples[i] = block.num_tuples[j];
+            copy_time[i] = block.copy_time[j];
+            locator[i] = block.locator[j];
+        }
+        out.putInt(size);
+        out.putInt(window);
+        out.putDoubles(runtime, n);
+        out.putLongs(num_tuples, n);
+        out.putDoubles(copy_time, n);
+        out.putInts(locator, n);
+        out.putLong(prev_num_tuples);
+        out.putDouble(tot_runtime);
+        out.putLong(tot_num_tuples);
+        out.putDouble(tot_copy_time);
+        out.putLong(tot_rule_tuples);
+        runtimes.write(out);
+        // in the order of insertion into the map
+        out.putInt(series.size());
+        for (RuleSeries rul : series) {
+            rul.write(out);
+        }
+    }
+
+    public static IterationTable read(SnapshotFile.Input in, SymbolTable symbols) {
+        IterationTable table = new IterationTable(symbols);
+        table.size = in.getInt();
+        table.window = in.getInt();
+        double[] runtime = in.getDoubles(0);
+        long[] num_tuples = in.getLongs(0);
+        double[] copy_time = in.getDoubles(0);
+        int[] locator = in.getInts(0);
+        for (int i = 0; i < table.slots(); i++) {
+            Rows block = table.rows.edit(i);
+            int j = BlockArray.offset(i);
+            block.runtime[j] = runtime[i];
+            block.num_tuples[j] = num_tuples[i];
+            block.copy_time[j] = copy_time[i];
+            block.locator[j] = locator[i];
+        }
+        table.prev_num_tuples = in.getLong();
+        table.tot_runtime = in.getDouble();
+        table.tot_num_tuples = in.getLong();
+        table.tot_copy_time = in.getDouble();
+        table.tot_rule_tuples = in.getLong();
+        table.runtimes = QuantileSketch.read(in);
+        int n = in.getInt();
+        for (int i = 0; i < n; i++) {
+            RuleSeries rul = RuleSeries.read(in, symbols);
+            table.series.add(rul);
+            table.series_map.put(new Iteration.RuleKey(rul.getNameSymbol(),
+                    rul.getLocatorSymbol(), rul.getVersion()), rul);
+        }
+        return table;
+    }
+
+    /**
+     * Writes the running totals only.
+     */
+    public void writeSummary(SnapshotFile.Output out) throws IOException {
+        out.putDouble(tot_runtime);
+        out.putLong(tot_num_tuples);
+        out.putDouble(tot_copy_time);
+        out.putLong(tot_rule_tuples);
+        runtimes.write(out);
+    }
+
+    /**
+     * @return an empty table with the running totals of a summary
+     */
+    public static IterationTable readSummary(SnapshotFile.Input in, SymbolTable symbols) {
+        IterationTable table = new IterationTable(symbols);
+        table.tot_runtime = in.getDouble();
+        table.tot_num_tuples = in.getLong();
+        table.tot_copy_time = in.getDouble();
+        table.tot_rule_tuples = in.getLong();
+        table.runtimes = QuantileSketch.read(in);
+        return table;
+    }
+
+    /**
+     * Keeps only the given number of most recent iterations. Must be set
+     * before the first iteration is added.
+     * 
+     * @param window number of iterations, 0 to keep all
+     */
+    public void setWindow(int window) {
+        this.window = window;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * @return the slot of an iteration in the arrays
+     */
+    private int slot(int iteration) {
+        return window == 0 ? iteration : iteration % window;
+    }
+
+    /**
+     * @return the number of slots in use
+     */
+    private int slots() {
+        return window == 0 ? size : Math.min(size, window);
+    }
+
+    /**
+     * Starts a new iteration. In streaming mode it replaces the oldest
+     * iteration of a full window.
+     * 
+     * @return the number of the new iteration
+     */
+    public int add() {
+        int i = slot(size);
+        Rows block = rows.edit(i);
+        int j = BlockArray.offset(i);
+        block.runtime[j] = 0;
+        block.num_tuples[j] = 0;
+        block.copy_time[j] = 0;
+        block.locator[j] = ProfileEvent.NONE;
+        prev_num_tuples = 0;
+        // replaced by the runtime of the iteration once it is known
+        runtimes.add(0);
+        return size++;
+    }
+
+    /**
+     * Adds a recursive rule event to the last iteration.
+     */
+    public void addRule(ProfileEvent event, String rec_id) {
+        int iteration = size - 1;
+        Iteration.RuleKey key = new Iteration.RuleKey(event.getRule(), event.getLocator(), event.getVersion());
+        RuleSeries rul = series_map.get(key);
+
+        if (event.getKind() == ProfileEvent.Kind.REC_RULE_TIME) {
+            if (rul == null) {
+                rul = new RuleSeries(symbols, event.getRule(), event.getLocator(),
+                        event.getVersion(), rec_id, window);
+                series_map.put(key, rul);
+                series.add(rul);
+            }
+            rul.addRuntime(iteration, event.getTime());
+
+        } else if (event.getKind() == ProfileEvent.Kind.REC_RULE_SIZE) {
+            assert rul != null && rul.has(iteration) : "missing t tag";
+            long tuples = event.getTuples() - prev_num_tuples;
+            tot_rule_tuples += tuples - rul.getNum_tuples(iteration);
+            rul.setNum_tuples(iteration, tuples);
+            this.prev_num_tuples = event.getTuples();
+        }
+    }
+
+    /**
+     * @return the number of iterations, including those no longer kept
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of the oldest iteration that is kept
+     */
+    public int first() {
+        return window == 0 ? 0 : Math.max(0, size - window);
+    }
+
+    public double getRuntime(int iteration) {
+        int i = slot(iteration);
+        return rows.get(i).runtime[BlockArray.offset(i)];
+    }
+
+    public void setRuntime(int iteration, double time) {
+        int i = slot(iteration);
+        double[] runtime = rows.edit(i).runtime;
+        int j = BlockArray.offset(i);
+        tot_runtime += time - runtime[j];
+        runtimes.replace(runtime[j], time);
+        runtime[j] = time;
+    }
+
+    public long getNum_tuples(int iteration) {
+        int i = slot(iteration);
+        return rows.get(i).num_tuples[BlockArray.offset(i)];
+    }
+
+    public void setNum_tuples(int iteration, long tuples) {
+        int i = slot(iteration);
+        long[] num_tuples = rows.edit(i).num_tuples;
+        int j = BlockArray.offset(i);
+        tot_num_tuples += tuples - num_tuples[j];
+        num_tuples[j] = tuples;
+    }
+
+    public double getCopy_time(int iteration) {
+        int i = slot(iteration);
+        return rows.get(i).copy_time[BlockArray.offset(i)];
+    }
+
+    public void setCopy_time(int iteration, double time) {
+        int i = slot(iteration);
+        double[] copy_time = rows.edit(i).copy_time;
+        int j = BlockArray.offset(i);
+        tot_copy_time += time - copy_time[j];
+        copy_time[j] = time;
+    }
+
+    public double getTotRuntime() {
+        return tot_runtime;
+    }
+
+    public long getTotNum_tuples() {
+        return tot_num_tuples;
+    }
+
+    public double getTotCopy_time() {
+        return tot_copy_time;
+    }
+
+    /**
+     * @return the distribution of the runtime per iteration
+     */
+    public QuantileSketch getRuntimes() {
+        return runtimes;
+    }
+
+    /**
+     * @return the number of new tuples of all recursive rules
+     */
+    public long getTotRule_tuples() {
+        return tot_rule_tuples;
+    }
+
+    public String getLocator(int iteration) {
+        int i = slot(iteration);
+        int locator = rows.get(i).locator[BlockArray.offset(i)];
+        if (locator == ProfileEvent.NONE) {
+            return "";
+        }
+        return symbols.resolve(locator);
+    }
+
+    public void setLocator(int iteration, int locator) {
+        int i = slot(iteration);
+        rows.edit(i).locator[BlockArray.offset(i)] = locator;
+    }
+
+    /**
+     * @return all rule versions in the order of their first evaluation
+     */
+    public List<RuleSeries> getRuleSeries() {
+        return Collections.unmodifiableList(series);
+    }
+
+    /**
+     * @return the rule versions evaluated in the given iteration
+     */
+    public Map<Iteration.RuleKey, RuleRecursive> getRules(int iteration) {
+        Map<Iteration.RuleKey, RuleRecursive> result = new HashMap<Iteration.RuleKey, RuleRecursive>();
+        for (Map.Entry<Iteration.RuleKey, RuleSeries> entry : series_map.entrySet()) {
+            if (entry.getValue().has(iteration)) {
+                result.put(entry.getKey(), entry.getValue().get(iteration));
+            }
+        }
+        return result;
+    }
+}
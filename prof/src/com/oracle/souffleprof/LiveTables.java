@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.oracle.souffleprof;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Profile Data Model
+ *
+ * The relation and rule tables of a live run. For each batch of changes
+ * only the rows of the relations that changed are rebuilt; the rows of all
+ * other relations are kept. The copy time
+ * of recursive rules is shared over the whole run, so it is charged again to
+ * every rule row, which is cheap compared to rebuilding the rows.
+ */
+public class LiveTables {
+
+    private ProgramRun run;
+    /** Rows of the relations by name */
+    private Map<String, DataRow> relations = new LinkedHashMap<String, DataRow>();
+    /** Rows of the rules by relation name, null until the rule table is used */
+    private Map<String, DataRow[]> rules;
+
+    /**
+     * @param run the snapshot the tables are built from
+     */
+    public LiveTables(ProgramRun run) {
+        this.run = run;
+        for (DataRow row : run.getRelTable()) {
+            relations.put(row.getName(), row);
+        }
+    }
+
+    /**
+     * Rebuilds the rows of the relations of a batch of changes.
+     */
+    public void update(ChangeBatch batch) {
+        ProgramRun snapshot = batch.getSnapshot();
+        for (String name : batch.getRelations()) {
+            Relation rel = snapshot.getRelation(name);
+            if (rel == null) {
+                continue;
+            }
+            relations.put(name, snapshot.getRelRow(rel));
+            if (rules != null) {
+                rules.put(name, snapshot.getRulTable(name));
+            }
+        }
+        this.run = snapshot;
+    }
+
+    public DataRow[] getRelTable() {
+        return relations.values().toArray(new DataRow[relations.size()]);
+    }
+
+    public DataRow[] getRulTable() {
+        if (rules == null) {
+            rules = new HashMap<String, DataRow[]>();
+            for (String name : relations.keySet()) {
+                rules.put(name, run.getRulTable(name));
+            }
+        }
+        int size = 0;
+        for (DataRow[] rows : rules.values()) {
+            size += rows.length;
+        }
+        DataRow[] table = new DataRow[size];
+        int i = 0;
+        for (DataRow[] rows : rules.values()) {
+            for (DataRow row : rows) {
+                run.updateRulRow(row);
+                table[i++] = row;
+            }
+        }
+        return table;
+    }
+}
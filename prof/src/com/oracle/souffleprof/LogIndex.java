@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.oracle.souffleprof;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sidecar index of a profile log.
+ *
+ * The index is stored next to the log and records the totals shown by the
+ * top and relation tables together with the byte ranges of the lines of
+ * each relation. A run opened from the index only has these totals; the
+ * rules and iterations of a relation are parsed from its ranges when they
+ * are needed. The index is ignored if the size or modification time of the
+ * log has changed since it was written.
+ */
+public class LogIndex {
+
+    /** "SPRI" */
+    private static final int MAGIC = 0x53505249;
+
+    private static final int VERSION = 3;
+
+    /** Size of the log regions mapped at once, and maximal length of a range */
+    private static final long MAP_WINDOW = 1 << 26;
+
+    private File log;
+    /** Ranges of the relations not loaded yet, by relation name */
+    private Map<String, Ranges> ranges = new HashMap<String, Ranges>();
+
+    private LogIndex(File log) {
+        this.log = log;
+    }
+
+    /**
+     * @return the file the index of the given log is stored in
+     */
+    public static File getFile(File log) {
+        return new File(log.getPath() + ".idx");
+    }
+
+    /**
+     * Reads the index of the log into an empty run.
+     *
+     * @return the index, or null if there is no valid index of the log
+     */
+    public static LogIndex open(File log, ProgramRun run) {
+        File file = getFile(log);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                // an index is complete if it ends with the magic number
+                if (buf.capacity() < 8 || buf.getInt(buf.capacity() - 4) != MAGIC) {
+                    return null;
+                }
+                SnapshotFile.Input in = new SnapshotFile.Input(buf);
+                if (in.getInt() != MAGIC || in.getInt() != VERSION
+                        || in.getLong() != log.length() || in.getLong() != log.lastModified()) {
+                    return null;
+                }
+                run.readSummary(in);
+                LogIndex index = new LogIndex(log);
+                int n = in.getInt();
+                for (int i = 0; i < n; i++) {
+                    String name = in.getString();
+                    Ranges r = new Ranges();
+                    r.starts = in.getLongs(0);
+                    r.ends = in.getLongs(0);
+                    r.size = r.starts.length;
+                    index.ranges.put(name, r);
+                }
+                return index;
+            } finally {
+                channel.close();
+            }
+        } catch (IOException e) {
+            return null;
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return whether the relation has not been loaded yet
+     */
+    public boolean contains(String relation) {
+        return ranges.containsKey(relation);
+    }
+
+    /**
+     * Parses the lines of a relation read from the index.
+     *
+     * @return the relation with its rules and iterations
+     */
+    public Relation load(Relation summary, SymbolTable symbols) throws IOException {
+        Ranges r = ranges.get(summary.getName());
+        final Relation rel = new Relation(symbols, summary.getNameSymbol(), summary.getId());
+        LogParser parser = new LogParser(new EventSink() {
+            @Override
+            public void process(ProfileEvent event) {
+                if (event.getRelation() == rel.getNameSymbol()) {
+                    ProgramRun.dispatch(rel, event);
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+        }, symbols);
+        FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ);
+        try {
+            // ranges are ascending, a window is mapped for many of them
+            long size = channel.size();
+            MappedByteBuffer buf = null;
+            long base = 0;
+            for (int i = 0; i < r.size; i++) {
+                long start = r.starts[i];
+                long end = Math.min(r.ends[i], size);
+                if (buf == null || start < base || end > base + buf.capacity()) {
+                    base = start;
+                    buf = channel.map(FileChannel.MapMode.READ_ONLY, base,
+                            Math.min(Math.max(MAP_WINDOW, end - start), size - start));
+                }
+                int from = (int) (start - base);
+                int to = (int) (end - base);
+                int p = parser.parseLines(buf, from, to);
+                if (p < to) {
+                    // the last line of the log is not terminated
+                    parser.parseLine(buf, p, to);
+                }
+            }
+        } finally {
+            channel.close();
+        }
+        ranges.remove(summary.getName());
+        return rel;
+    }
+
+    /**
+     * Parses the whole log once for all relations read from the index, which
+     * is cheaper than loading them one by one when their lines interleave.
+     *
+     * @return the relations with their rules and iterations
+     */
+    public List<Relation> loadAll(Collection<Relation> summaries, SymbolTable symbols) throws IOException {
+        final Map<Integer, Relation> loaded = new HashMap<Integer, Relation>();
+        for (Relation summary : summaries) {
+            if (contains(summary.getName())) {
+                loaded.put(summary.getNameSymbol(),
+                        new Relation(symbols, summary.getNameSymbol(), summary.getId()));
+            }
+        }
+        LogParser parser = new LogParser(new EventSink() {
+            @Override
+            public void process(ProfileEvent event) {
+                Relation rel = loaded.get(event.getRelation());
+                if (rel != null) {
+                    ProgramRun.dispatch(rel, event);
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+        }, symbols);
+        FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            long base = 0;
+            while (base < size) {
+                int len = (int) Math.min(MAP_WINDOW, size - base);
+                MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, base, len);
+                int p = parser.parseLines(buf, 0, len);
+                if (base + len == size) {
+                    if (p < len) {
+                        // the last line of the log is not terminated
+                        parser.parseLine(buf, p, len);
+                    }
+                    break;
+                }
+                if (p == 0) {
+                    throw new IOException("line longer than " + MAP_WINDOW + " bytes");
+                }
+                base += p;
+            }
+        } finally {
+            channel.close();
+        }
+        ranges.clear();
+        return new ArrayList<Relation>(loaded.values());
+    }
+
+    /**
+     * Writes the index of a log. An existing file that is not an index is
+     * not overwritten.
+     * 
+     * @param length the number of bytes of the log that were parsed
+     * @param modified the modification time of the log before it was parsed
+     */
+    public static void write(File log, long length, long modified, ProgramRun run, Builder builder)
+            throws IOException {
+        File file = getFile(log);
+        if (file.exists() && !isIndex(file)) {
+            return;
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            SnapshotFile.Output out = new SnapshotFile.Output(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putLong(length);
+            out.putLong(modified);
+            run.writeSummary(out);
+            SymbolTable symbols = run.getSymbolTable();
+            int n = 0;
+            for (Ranges r : builder.ranges) {
+                if (r != null) {
+                    n++;
+                }
+            }
+            out.putInt(n);
+            for (int name = 0; name < builder.ranges.length; name++) {
+                Ranges r = builder.ranges[name];
+                if (r != null) {
+                    out.putString(symbols.resolve(name));
+                    out.putLongs(r.starts, r.size);
+                    out.putLongs(r.ends, r.size);
+                }
+            }
+            out.putInt(MAGIC);
+            out.flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static boolean isIndex(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return channel.size() >= 4
+                    && channel.map(FileChannel.MapMode.READ_ONLY, 0, 4).getInt() == MAGIC;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Records the ranges of the lines of each relation while a log is
+     * parsed, and forwards the events to the data model.
+     */
+    public static class Builder implements EventSink {
+
+        private EventSink sink;
+        private LogParser parser;
+        /** Ranges by symbol of the relation name */
+        private Ranges[] ranges = new Ranges[64];
+
+        public Builder(EventSink sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * @param parser the parser feeding this builder
+         */
+        public void setParser(LogParser parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        public void process(ProfileEvent event) {
+            int name = event.getRelation();
+            if (name != ProfileEvent.NONE) {
+                getRanges(name).add(parser.getLineOffset(), parser.getLineEndOffset());
+            }
+            if (sink != null) {
+                sink.process(event);
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (sink != null) {
+                sink.flush();
+            }
+        }
+
+        /**
+         * Appends the ranges found by the builder of a chunk that follows
+         * the lines seen so far.
+         * 
+         * @param symbols symbol table of the chunk
+         * @param target symbol table of this builder
+         */
+        public void append(Builder chunk, SymbolTable symbols, SymbolTable target) {
+            for (int name = 0; name < chunk.ranges.length; name++) {
+                Ranges r = chunk.ranges[name];
+                if (r == null) {
+                    continue;
+                }
+                byte[] data = symbols.getBytes(name);
+                Ranges to = getRanges(target.intern(ByteBuffer.wrap(data), 0, data.length));
+                for (int i = 0; i < r.size; i++) {
+                    to.add(r.starts[i], r.ends[i]);
+                }
+            }
+        }
+
+        private Ranges getRanges(int name) {
+            if (name >= ranges.length) {
+                ranges = Arrays.copyOf(ranges, Math.max(name + 1, 2 * ranges.length));
+            }
+            if (ranges[name] == null) {
+                ranges[name] = new Ranges();
+            }
+            return ranges[name];
+        }
+    }
+
+    /**
+     * Byte ranges of consecutive lines.
+     */
+    private static class Ranges {
+
+        private long[] starts = new long[4];
+        private long[] ends = new long[4];
+        private int size = 0;
+
+        void add(long start, long end) {
+            if (size > 0 && ends[size - 1] == start && end - starts[size - 1] <= MAP_WINDOW) {
+                ends[size - 1] = end;
+                return;
+            }
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, 2 * size);
+                ends = Arrays.copyOf(ends, 2 * size);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.oracle.souffleprof;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Feeds the lines of a profile log into an event sink, usually the data
+ * model.
+ *
+ * Lines are tokenized in place and their strings are interned into the
+ * symbol table of the sink; the tokenizer and the decoded event are reused
+ * for every line, so parsing only allocates for strings not seen before.
+ * A parser is confined to a single thread.
+ */
+public class LogParser {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Size of the file regions mapped at once */
+    private static final int MAP_WINDOW = 1 << 26;
+
+    private EventSink sink;
+    private SymbolTable symbols;
+    private RelationFilter filter;
+    private LogTokenizer tokenizer = new LogTokenizer();
+    private ProfileEvent event = new ProfileEvent();
+    /** Offset in the input of the buffer being parsed */
+    private long base = 0;
+    private int line_start = 0;
+    private int line_end = 0;
+
+    /**
+     * @param symbols symbol table of the sink
+     */
+    public LogParser(EventSink sink, SymbolTable symbols) {
+        this.sink = sink;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Skips the lines of all relations but the one selected by the filter.
+     * The filter has to see every line in order, so a filtered parser reads
+     * a log sequentially.
+     */
+    public void setFilter(RelationFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Parses the line stored in buf between start and end (exclusive),
+     * without the line terminator.
+     */
+    public void parseLine(ByteBuffer buf, int start, int end) {
+        this.line_start = start;
+        this.line_end = end;
+        if (filter != null && !filter.accept(buf, start, end)) {
+            return;
+        }
+        if (tokenizer.tokenize(buf, start, end) && event.parse(tokenizer, symbols)) {
+            sink.process(event);
+        }
+    }
+
+    /**
+     * Parses all complete lines stored in buf between start and end.
+     * 
+     * @return the position after the last complete line
+     */
+    public int parseLines(ByteBuffer buf, int start, int end) {
+        return parseLines(buf, start, end, end);
+    }
+
+    /**
+     * Parses the complete lines stored in buf between start and end that
+     * begin before stop.
+     */
+    private int parseLines(ByteBuffer buf, int start, int end, int stop) {
+        int line_start = start;
+        for (int p = start; p < end && line_start < stop; p++) {
+            if (buf.get(p) == '\n') {
+                parseLine(buf, line_start, p);
+                line_start = p + 1;
+            }
+        }
+        return line_start;
+    }
+
+    /**
+     * Parses the lines of a stream until its end.
+     * 
+     * @param partial if set, an unterminated last line is not parsed
+     * @return the number of bytes parsed
+     */
+    public long parse(InputStream in, boolean partial) throws IOException {
+        byte[] data = new byte[BUFFER_SIZE];
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        long parsed = 0;
+        int len = 0;
+        int n;
+        while ((n = in.read(data, len, data.length - len)) != -1) {
+            len += n;
+            base = parsed;
+            int start = parseLines(buf, 0, len);
+            if (start > 0) {
+                // keep the incomplete line for the next read
+                System.arraycopy(data, start, data, 0, len - start);
+                parsed += start;
+                len -= start;
+            } else if (len == data.length) {
+                byte[] larger = new byte[data.length * 2];
+                System.arraycopy(data, 0, larger, 0, len);
+                data = larger;
+                buf = ByteBuffer.wrap(data);
+            }
+        }
+        if (!partial && len > 0) {
+            base = parsed;
+            parseLine(buf, 0, len);
+            parsed += len;
+        }
+        return parsed;
+    }
+
+    /**
+     * Parses the lines of a file from the given position on. 
+     * 
+     * The file is mapped into memory window by window and the lines are
+     * tokenized directly in the mapped buffers, which avoids copying the
+     * file through the Java heap. Windows end at line boundaries.
+     * 
+     * @param partial if set, an unterminated last line is not parsed
+     * @return the number of bytes parsed
+     */
+    public long parse(FileChannel channel, long position, boolean partial) throws IOException {
+        return parse(channel, position, Long.MAX_VALUE, partial);
+    }
+
+    /**
+     * Parses the lines of a file that begin between position and limit.
+     * The last line may extend beyond the limit.
+     * 
+     * @param partial if set, an unterminated last line is not parsed
+     * @return the number of bytes parsed
+     */
+    public long parse(FileChannel channel, long position, long limit, boolean partial) throws IOException {
+        long size = channel.size();
+        long start = position;
+        long window = MAP_WINDOW;
+        while (start < size && start < limit) {
+            long len = Math.min(window, size - start);
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, len);
+            base = start;
+            int end = parseLines(buf, 0, (int) len, (int) Math.min(len, limit - start));
+            if (end > 0) {
+                start += end;
+                window = MAP_WINDOW;
+            } else if (start + len == size) {
+                break;
+            } else {
+                // a line longer than the window
+                window = Math.min(2 * window, Integer.MAX_VALUE);
+            }
+        }
+        if (!partial && start < size && start < limit) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, size - start);
+            base = start;
+            parseLine(buf, 0, (int) (size - start));
+            start = size;
+        }
+        return start - position;
+    }
+
+    /**
+     * @return the offset in the input of the line parsed last
+     */
+    public long getLineOffset() {
+        return base + line_start;
+    }
+
+    /**
+     * @return the offset in the input after the terminator of the line
+     *         parsed last
+     */
+    public long getLineEndOffset() {
+        return base + line_end + 1;
+    }
+
+    /**
+     * @return the line parsed last, for error messages
+     */
+    public String getLine() {
+        return tokenizer.toString();
+    }
+}
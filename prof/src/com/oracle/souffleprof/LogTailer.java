@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.oracle.souffleprof;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows a growing profile log of a running program.
+ *
+ * The tailer sleeps on a watch service of the log's directory and wakes up
+ * as soon as the file is modified. Appended bytes are read through a file
+ * channel into a reusable buffer; complete lines are decoded into a batch,
+ * which is applied to the sink at once. An incomplete last line stays in the
+ * buffer until the rest of it is written. A binary log is decoded by its
+ * parser, which keeps an incomplete record and the events that wait for
+ * missing sequence numbers until the next read. In case the file system does
+ * not deliver change notifications, the file is checked at a fixed interval.
+ */
+public class LogTailer implements Runnable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Interval in ms at which the file is checked without notification */
+    private static final long POLL_INTERVAL = 250;
+
+    private File file;
+    private EventSink sink;
+    private SymbolTable symbols;
+    private long position;
+    private volatile boolean running = true;
+    private ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+    private EventBatch batch;
+    private LogParser parser;
+    /** Decoder of a binary log, which keeps its own buffer */
+    private BinaryLogParser binary_parser;
+    private InputStream binary_in;
+    private WatchService watcher;
+
+    /**
+     * @param position offset of the first byte not parsed yet
+     * @param symbols symbol table of the sink
+     */
+    public LogTailer(File file, long position, EventSink sink, SymbolTable symbols) throws IOException {
+        this.file = file.getAbsoluteFile();
+        this.position = position;
+        this.sink = sink;
+        this.symbols = symbols;
+        this.batch = new EventBatch(symbols);
+        this.parser = new LogParser(batch, symbols);
+        this.watcher = this.file.toPath().getFileSystem().newWatchService();
+    }
+
+    /**
+     * Follows a binary log.
+     *
+     * @param in stream of the log after the bytes the parser has read
+     */
+    public LogTailer(File file, BinaryLogParser parser, InputStream in, EventSink sink) throws IOException {
+        this.file = file.getAbsoluteFile();
+        this.sink = sink;
+        this.binary_parser = parser;
+        this.binary_in = in;
+        this.watcher = this.file.toPath().getFileSystem().newWatchService();
+    }
+
+    @Override
+    public void run() {
+        FileChannel channel = null;
+        try {
+            Path path = file.toPath();
+            path.getParent().register(watcher, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_CREATE);
+            if (binary_parser == null) {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+            }
+            while (running) {
+                if (binary_parser != null) {
+                    // records are applied as they are decoded
+                    if (binary_parser.parse(binary_in, true) > 0) {
+                        sink.flush();
+                    }
+                } else {
+                    read(channel);
+                }
+                WatchKey key = watcher.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // stopped
+        } catch (InterruptedException e) {
+            // stopped
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.out.println(binary_parser != null ? binary_parser.getLabel() : parser.getLine());
+        } finally {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+                if (binary_in != null) {
+                    binary_in.close();
+                }
+                watcher.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Parses everything appended since the last call.
+     */
+    private void read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < position) {
+            // Log must have been deleted.
+            position = size;
+            buf.clear();
+        }
+        while (position + buf.position() < size) {
+            if (!buf.hasRemaining()) {
+                // a line longer than the buffer
+                ByteBuffer larger = ByteBuffer.allocate(buf.capacity() * 2);
+                buf.flip();
+                larger.put(buf);
+                buf = larger;
+            }
+            int n = channel.read(buf, position + buf.position());
+            if (n <= 0) {
+                break;
+            }
+            int end = parser.parseLines(buf, 0, buf.position());
+            if (end > 0) {
+                buf.limit(buf.position());
+                buf.position(end);
+                buf.compact();
+                position += end;
+            }
+        }
+
+        if (batch.size() > 0) {
+            batch.replay(sink, symbols);
+            batch.clear();
+            sink.flush();
+        }
+    }
+
+    /**
+     * Stops following the log.
+     */
+    public void kill() {
+        this.running = false;
+        try {
+            watcher.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.oracle.souffleprof;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Splits a profile log line into its fields without copying.
+ *
+ * The tokenizer works on the raw bytes of a line and only records the
+ * start and end offsets of each field. Fields are separated by semicolons
+ * and surrounding white space is dropped. Semicolons inside single or double
+ * quotes belong to the field. Numbers are parsed straight from the bytes;
+ * strings are only created when a field is requested as a string.
+ *
+ * A tokenizer instance is reused for all lines of a log file.
+ */
+public class LogTokenizer {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte[] START_DEBUG = ascii("start-debug");
+
+    /** Exact powers of ten for the fast path of the double parser */
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private ByteBuffer buf;
+    private int line_start;
+    private int line_end;
+    private int size = 0;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Tokenizes the line stored in buf between start (inclusive) and end
+     * (exclusive), excluding the line terminator.
+     * 
+     * @return false if the line is not a profile event
+     */
+    public boolean tokenize(ByteBuffer buf, int start, int end) {
+        this.buf = buf;
+        this.line_start = start;
+        if (end > start && buf.get(end - 1) == '\r') {
+            end--;
+        }
+        this.line_end = end;
+        this.size = 0;
+
+        if (end <= start || buf.get(start) != '@') {
+            return false;
+        }
+
+        boolean single_quote = false;
+        boolean double_quote = false;
+        int field_start = start + 1;
+        for (int p = start + 1; p < end; p++) {
+            byte b = buf.get(p);
+            if (b == '\'') {
+                single_quote = !single_quote;
+            } else if (b == '"') {
+                double_quote = !double_quote;
+            } else if (b == ';' && !single_quote && !double_quote) {
+                addField(field_start, p);
+                field_start = p + 1;
+            }
+        }
+        addField(field_start, end);
+
+        // white space is only significant away from the separators
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                while (starts[i] < ends[i] && isSpace(buf.get(starts[i]))) {
+                    starts[i]++;
+                }
+            }
+            if (i < size - 1) {
+                while (ends[i] > starts[i] && isSpace(buf.get(ends[i] - 1))) {
+                    ends[i]--;
+                }
+            }
+        }
+        while (size > 0 && starts[size - 1] == ends[size - 1]) {
+            size--;
+        }
+
+        return !(size == 1 && equals(0, START_DEBUG));
+    }
+
+    private void addField(int start, int end) {
+        if (size == starts.length) {
+            int[] new_starts = new int[size * 2];
+            int[] new_ends = new int[size * 2];
+            System.arraycopy(starts, 0, new_starts, 0, size);
+            System.arraycopy(ends, 0, new_ends, 0, size);
+            starts = new_starts;
+            ends = new_ends;
+        }
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    /**
+     * @return the number of fields of the current line
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the length in bytes of field i
+     */
+    public int length(int i) {
+        check(i);
+        return ends[i] - starts[i];
+    }
+
+    /**
+     * @return byte k of field i
+     */
+    public byte byteAt(int i, int k) {
+        check(i);
+        return buf.get(starts[i] + k);
+    }
+
+    public boolean equals(int i, byte[] str) {
+        check(i);
+        if (ends[i] - starts[i] != str.length) {
+            return false;
+        }
+        return regionMatches(starts[i], str);
+    }
+
+    public boolean contains(int i, byte[] str) {
+        check(i);
+        for (int p = starts[i]; p + str.length <= ends[i]; p++) {
+            if (regionMatches(p, str)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean regionMatches(int pos, byte[] str) {
+        for (int k = 0; k < str.length; k++) {
+            if (buf.get(pos + k) != str[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes field i as a string.
+     */
+    public String getString(int i) {
+        check(i);
+        int len = ends[i] - starts[i];
+        if (buf.hasArray()) {
+            return new String(buf.array(), buf.arrayOffset() + starts[i], len, UTF8);
+        }
+        if (scratch.length < len) {
+            scratch = new byte[Math.max(len, scratch.length * 2)];
+        }
+        for (int k = 0; k < len; k++) {
+            scratch[k] = buf.get(starts[i] + k);
+        }
+        return new String(scratch, 0, len, UTF8);
+    }
+
+    /**
+     * Interns field i without decoding it.
+     * 
+     * @return the id of the field in the symbol table
+     */
+    public int intern(int i, SymbolTable symbols) {
+        check(i);
+        return symbols.intern(buf, starts[i], ends[i]);
+    }
+
+    public long getLong(int i) {
+        check(i);
+        int p = starts[i];
+        int end = ends[i];
+        while (p < end && isSpace(buf.get(p))) {
+            p++;
+        }
+        while (end > p && isSpace(buf.get(end - 1))) {
+            end--;
+        }
+        boolean negative = false;
+        if (p < end && (buf.get(p) == '-' || buf.get(p) == '+')) {
+            negative = buf.get(p) == '-';
+            p++;
+        }
+        // longer numbers may overflow, leave them to the library
+        if (p == end || end - p > 18) {
+            return Long.parseLong(getString(i).trim());
+        }
+        long result = 0;
+        for (; p < end; p++) {
+            int digit = buf.get(p) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("For input string: \"" + getString(i) + "\"");
+            }
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    public int getInt(int i) {
+        long result = getLong(i);
+        if (result != (int) result) {
+            throw new NumberFormatException("Value out of range: \"" + getString(i) + "\"");
+        }
+        return (int) result;
+    }
+
+    /**
+     * Parses field i as a double.
+     * 
+     * Decimal numbers with at most 15 significant digits and a small
+     * exponent are converted exactly without creating a string (Clinger's
+     * fast path). All other inputs are handed to Double.parseDouble.
+     */
+    public double getDouble(int i) {
+        check(i);
+        int p = starts[i];
+        int end = ends[i];
+        while (p < end && isSpace(buf.get(p))) {
+            p++;
+        }
+        while (end > p && isSpace(buf.get(end - 1))) {
+            end--;
+        }
+        boolean negative = false;
+        if (p < end && (buf.get(p) == '-' || buf.get(p) == '+')) {
+            negative = buf.get(p) == '-';
+            p++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean seen_digit = false;
+        boolean seen_point = false;
+        for (; p < end; p++) {
+            byte b = buf.get(p);
+            if (b >= '0' && b <= '9') {
+                seen_digit = true;
+                if (mantissa != 0 || b != '0') {
+                    if (++digits > 15) {
+                        return slowDouble(i);
+                    }
+                    mantissa = mantissa * 10 + (b - '0');
+                }
+                if (seen_point) {
+                    exponent--;
+                }
+            } else if (b == '.' && !seen_point) {
+                seen_point = true;
+            } else {
+                break;
+            }
+        }
+        if (!seen_digit) {
+            return slowDouble(i);
+        }
+        if (p < end) {
+            byte b = buf.get(p);
+            if (b != 'e' && b != 'E') {
+                return slowDouble(i);
+            }
+            p++;
+            boolean negative_exp = false;
+            if (p < end && (buf.get(p) == '-' || buf.get(p) == '+')) {
+                negative_exp = buf.get(p) == '-';
+                p++;
+            }
+            if (p == end || end - p > 3) {
+                return slowDouble(i);
+            }
+            int exp = 0;
+            for (; p < end; p++) {
+                int digit = buf.get(p) - '0';
+                if (digit < 0 || digit > 9) {
+                    return slowDouble(i);
+                }
+                exp = exp * 10 + digit;
+            }
+            exponent += negative_exp ? -exp : exp;
+        }
+        double result;
+        if (mantissa == 0) {
+            result = 0.0;
+        } else if (exponent >= 0 && exponent < POW10.length) {
+            result = mantissa * POW10[exponent];
+        } else if (exponent < 0 && -exponent < POW10.length) {
+            result = mantissa / POW10[-exponent];
+        } else {
+            return slowDouble(i);
+        }
+        return negative ? -result : result;
+    }
+
+    private double slowDouble(int i) {
+        return Double.parseDouble(getString(i));
+    }
+
+    private void check(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Missing field " + i + " in " + toString());
+        }
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    static byte[] ascii(String str) {
+        return str.getBytes(Charset.forName("US-ASCII"));
+    }
+
+    /**
+     * @return the current line, for error messages
+     */
+    @Override
+    public String toString() {
+        if (buf == null) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder();
+        for (int p = line_start; p < line_end; p++) {
+            result.append((char) (buf.get(p) & 0xff));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.oracle.souffleprof;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Parses a profile log with several threads.
+ *
+ * The file is cut into chunks of roughly equal size. Each chunk starts at the
+ * first line beginning in it and ends with the last line beginning in it.
+ * Chunks are tokenized and decoded on a fork-join pool into event batches,
+ * which are then applied to the sink strictly in file order. The data model
+ * therefore sees exactly the same sequence of events as with a sequential
+ * parse, which keeps the iteration boundaries and the tuple deltas intact,
+ * while decoding scales with the number of threads.
+ *
+ * If an index is built, each chunk records the lines of its relations,
+ * and the ranges of the chunks are appended to the index in file order.
+ */
+public class ParallelLogParser {
+
+    /** Nominal size of a chunk */
+    private static final long CHUNK_SIZE = 1 << 23;
+
+    private EventSink sink;
+    private SymbolTable symbols;
+    private int parallelism;
+    private LogIndex.Builder index;
+    private volatile String error_line = "";
+
+    /**
+     * @param symbols symbol table of the sink
+     */
+    public ParallelLogParser(EventSink sink, SymbolTable symbols, int parallelism) {
+        this.sink = sink;
+        this.symbols = symbols;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param index builder of the index of the parsed lines, or null
+     */
+    public void setIndex(LogIndex.Builder index) {
+        this.index = index;
+    }
+
+    /**
+     * Parses the lines of a file from the given position on.
+     * 
+     * @param partial if set, an unterminated last line is not parsed
+     * @return the number of bytes parsed
+     */
+    public long parse(final FileChannel channel, final long position, final boolean partial)
+            throws IOException {
+        long size = channel.size();
+        long end = position;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // bound the number of decoded chunks waiting to be applied
+            Deque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+            long next = position;
+            while (next < size || !pending.isEmpty()) {
+                while (next < size && pending.size() < 2 * parallelism) {
+                    final long from = next;
+                    final long to = Math.min(size, next + CHUNK_SIZE);
+                    pending.add(pool.submit(new Callable<Chunk>() {
+                        public Chunk call() throws IOException {
+                            return parseChunk(channel, position, from, to, partial);
+                        }
+                    }));
+                    next = to;
+                }
+                Chunk chunk = await(pending.poll());
+                chunk.batch.replay(sink, symbols);
+                if (index != null) {
+                    index.append(chunk.index, chunk.symbols, symbols);
+                }
+                end = Math.max(end, chunk.end);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return end - position;
+    }
+
+    private Chunk parseChunk(FileChannel channel, long position, long from, long to, boolean partial)
+            throws IOException {
+        long start = (from == position) ? from : lineStart(channel, from);
+        // chunks intern into their own tables, only the distinct strings of
+        // a chunk are translated to the shared table
+        SymbolTable chunk_symbols = new SymbolTable();
+        EventBatch batch = new EventBatch(chunk_symbols);
+        LogIndex.Builder chunk_index = null;
+        LogParser parser;
+        if (index != null) {
+            chunk_index = new LogIndex.Builder(batch);
+            parser = new LogParser(chunk_index, chunk_symbols);
+            chunk_index.setParser(parser);
+        } else {
+            parser = new LogParser(batch, chunk_symbols);
+        }
+        long parsed = 0;
+        try {
+            if (start < to) {
+                parsed = parser.parse(channel, start, to, partial);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            error_line = parser.getLine();
+            throw e;
+        }
+        return new Chunk(batch, chunk_index, chunk_symbols, parsed > 0 ? start + parsed : -1);
+    }
+
+    /**
+     * @return the position of the first line beginning at or after pos
+     */
+    private static long lineStart(FileChannel channel, long pos) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        long p = pos - 1;
+        long size = channel.size();
+        while (p < size) {
+            buf.clear();
+            int n = channel.read(buf, p);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') {
+                    return p + i + 1;
+                }
+            }
+            p += n;
+        }
+        return size;
+    }
+
+    private static Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * @return the line that failed to parse, for error messages
+     */
+    public String getLine() {
+        return error_line;
+    }
+
+    private static class Chunk {
+        final EventBatch batch;
+        final LogIndex.Builder index;
+        final SymbolTable symbols;
+        final long end;
+
+        Chunk(EventBatch batch, LogIndex.Builder index, SymbolTable symbols, long end) {
+            this.batch = batch;
+            this.index = index;
+            this.symbols = symbols;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.oracle.souffleprof;
+
+/**
+ * A single event of the profile log.
+ *
+ * Events are decoded from the fields of a log line. Strings are interned
+ * into a symbol table and carried as symbol ids. The readers reuse one
+ * instance for all lines, so the data must be consumed before the next line
+ * is parsed.
+ *
+ * Field layout of the log lines:
+ *   [x-nonrecursive-relation; rel_name; loc; val]
+ *   [x-nonrecursive-rule; rel_name; loc; rul_name; val]
+ *   [x-recursive-relation; rel_name; loc; val]
+ *   [x-recursive-rule; rel_name; version; loc; rul_name; val]
+ *   [t-stratum; index; val]
+ *   [runtime; val]
+ * Timer lines may end with two more fields, the start and end time in
+ * seconds on the steady clock of the program.
+ */
+public class ProfileEvent {
+
+    public enum Kind {
+        RUNTIME,
+        NONREC_RELATION_TIME,
+        NONREC_RELATION_SIZE,
+        NONREC_RULE_TIME,
+        NONREC_RULE_SIZE,
+        REC_RELATION_TIME,
+        REC_RELATION_SIZE,
+        REC_RELATION_COPY,
+        REC_RULE_TIME,
+        REC_RULE_SIZE,
+        STRATUM_TIME
+    }
+
+    private static final byte[] RUNTIME = LogTokenizer.ascii("runtime");
+    private static final byte[] NONRECURSIVE = LogTokenizer.ascii("nonrecursive");
+    private static final byte[] RECURSIVE = LogTokenizer.ascii("recursive");
+    private static final byte[] RELATION = LogTokenizer.ascii("relation");
+    private static final byte[] RULE = LogTokenizer.ascii("rule");
+    private static final byte[] STRATUM = LogTokenizer.ascii("stratum");
+
+    /** Marks an absent string field */
+    public static final int NONE = -1;
+
+    private Kind kind;
+    private int relation;
+    private int locator;
+    private int rule;
+    /** Version of a recursive rule, or index of a stratum */
+    private int version;
+    private double time;
+    private long tuples;
+    /** Start and end time of a timer event, NaN if unknown */
+    private double start;
+    private double end;
+
+    /**
+     * Decodes the fields of the tokenized line. 
+     * 
+     * @return false if the line does not carry profile data
+     */
+    public boolean parse(LogTokenizer tok, SymbolTable symbols) {
+        kind = kindOf(tok);
+        if (kind == null) {
+            return false;
+        }
+        relation = NONE;
+        locator = NONE;
+        rule = NONE;
+        version = 0;
+        time = 0;
+        tuples = 0;
+        start = Double.NaN;
+        end = Double.NaN;
+
+        switch (kind) {
+        case RUNTIME:
+            time = tok.getDouble(1);
+            parseInterval(tok, 2);
+            break;
+        case STRATUM_TIME:
+            version = tok.getInt(1);
+            time = tok.getDouble(2);
+            parseInterval(tok, 3);
+            break;
+        case NONREC_RELATION_TIME:
+        case REC_RELATION_TIME:
+        case REC_RELATION_COPY:
+            relation = tok.intern(1, symbols);
+            locator = tok.intern(2, symbols);
+            time = tok.getDouble(3);
+            parseInterval(tok, 4);
+            break;
+        case NONREC_RELATION_SIZE:
+        case REC_RELATION_SIZE:
+            relation = tok.intern(1, symbols);
+            tuples = tok.getLong(3);
+            break;
+        case NONREC_RULE_TIME:
+            relation = tok.intern(1, symbols);
+            locator = tok.intern(2, symbols);
+            rule = tok.intern(3, symbols);
+            time = tok.getDouble(4);
+            parseInterval(tok, 5);
+            break;
+        case NONREC_RULE_SIZE:
+            relation = tok.intern(1, symbols);
+            rule = tok.intern(3, symbols);
+            tuples = tok.getLong(4);
+            break;
+        case REC_RULE_TIME:
+            relation = tok.intern(1, symbols);
+            version = tok.getInt(2);
+            locator = tok.intern(3, symbols);
+            rule = tok.intern(4, symbols);
+            time = tok.getDouble(5);
+            parseInterval(tok, 6);
+            break;
+        case REC_RULE_SIZE:
+            relation = tok.intern(1, symbols);
+            version = tok.getInt(2);
+            locator = tok.intern(3, symbols);
+            rule = tok.intern(4, symbols);
+            tuples = tok.getLong(5);
+            break;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the start and end time following the value of a timer line,
+     * if the line has them.
+     */
+    private void parseInterval(LogTokenizer tok, int i) {
+        if (tok.size() > i + 1) {
+            start = tok.getDouble(i);
+            end = tok.getDouble(i + 1);
+        }
+    }
+
+    /**
+     * Overwrites all fields of this event. The event has no start and end
+     * time.
+     */
+    public void set(Kind kind, int relation, int locator, int rule,
+            int version, double time, long tuples) {
+        this.kind = kind;
+        this.relation = relation;
+        this.locator = locator;
+        this.rule = rule;
+        this.version = version;
+        this.time = time;
+        this.tuples = tuples;
+        this.start = Double.NaN;
+        this.end = Double.NaN;
+    }
+
+    /**
+     * Sets the start and end time of a timer event.
+     */
+    public void setInterval(double start, double end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Classifies a line by its tag, e.g. t-recursive-rule.
+     */
+    private static Kind kindOf(LogTokenizer tok) {
+        if (tok.size() == 0) {
+            return null;
+        }
+        if (tok.equals(0, RUNTIME)) {
+            return Kind.RUNTIME;
+        }
+        if (tok.length(0) == 0) {
+            return null;
+        }
+        byte type = tok.byteAt(0, 0);
+        if (type == 't' && tok.contains(0, STRATUM)) {
+            return Kind.STRATUM_TIME;
+        }
+        boolean relation = tok.contains(0, RELATION);
+        if (tok.contains(0, NONRECURSIVE)) {
+            if (type == 't' && relation) {
+                return Kind.NONREC_RELATION_TIME;
+            } else if (type == 'n' && relation) {
+                return Kind.NONREC_RELATION_SIZE;
+            } else if (type == 't' && tok.contains(0, RULE)) {
+                return Kind.NONREC_RULE_TIME;
+            } else if (type == 'n' && tok.contains(0, RULE)) {
+                return Kind.NONREC_RULE_SIZE;
+            }
+        } else if (tok.contains(0, RECURSIVE)) {
+            if (tok.contains(0, RULE)) {
+                if (type == 't') {
+                    return Kind.REC_RULE_TIME;
+                } else if (type == 'n') {
+                    return Kind.REC_RULE_SIZE;
+                }
+            } else if (type == 't' && relation) {
+                return Kind.REC_RELATION_TIME;
+            } else if (type == 'n' && relation) {
+                return Kind.REC_RELATION_SIZE;
+            } else if (type == 'c' && relation) {
+                return Kind.REC_RELATION_COPY;
+            }
+        }
+        return null;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getRelation() {
+        return relation;
+    }
+
+    public int getLocator() {
+        return locator;
+    }
+
+    public int getRule() {
+        return rule;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public long getTuples() {
+        return tuples;
+    }
+
+    /**
+     * @return whether the start and end time of the event are known
+     */
+    public boolean hasInterval() {
+        return !Double.isNaN(start);
+    }
+
+    public double getStart() {
+        return start;
+    }
+
+    public double getEnd() {
+        return end;
+    }
+}
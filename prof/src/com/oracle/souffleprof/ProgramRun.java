@@ -28,10 +28,16 @@
 
 package com.oracle.souffleprof;
 
-import java.io.Serializable;
+import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -40,73 +46,410 @@ import java.util.concurrent.TimeUnit;
  * Profile data model to represent a run of a Datalog program.
  * 
  */
-public class ProgramRun implements Serializable{
+public class ProgramRun implements EventSink {
 
-    /**
-     * 
-     */
-    private static final long serialVersionUID = -4236231035756069616L;
+    private SymbolTable symbols;
     private Map<String, Relation> relation_map;
+    /** Relations indexed by the symbol of their name */
+    private Relation[] relation_index;
     private int rel_id = 0;
     private Double runtime;
-    private Double tot_rec_tup = 0.0;
-    private Double tot_copy_time = 0.0;
+
+    /** Running totals over all relations, maintained by process() */
+    private long tot_num_tup = 0;
+    private long tot_rec_tup = 0;
+    private double tot_copy_time = 0;
+    /** When relations and strata were evaluated */
+    private Timeline timeline = new Timeline();
+    /** Number of iterations kept per relation in streaming mode, 0 to keep all */
+    private int window = 0;
+
+    /** Relations and rules by total time, maintained in live mode only */
+    private Ranking<Integer> relation_ranking;
+    private Ranking<Long> rule_ranking;
+
+    /** Name symbols of the recursive relations of the stratum being evaluated */
+    private Set<Integer> scc = new LinkedHashSet<Integer>();
+
+    /** Number of intervals the timeline is bounded to in streaming mode */
+    private static final int TIMELINE_LIMIT = 1 << 14;
+
+    /** Number of events processed, identifies the state of the model */
+    private long version = 0;
+
+    /** Relations changed since the last snapshot */
+    private List<Relation> modified = new ArrayList<Relation>();
+    /** Symbols of the rules changed since the last snapshot, if subscribed */
+    private Set<Integer> modified_rules = new HashSet<Integer>();
+    /** Subscribers to the changes of the snapshots, created on demand */
+    private volatile ChangeNotifier notifier;
+    /** Latest snapshot, published by flush() */
+    private volatile ProgramRun snapshot;
+    /** Index of the log if relations are loaded on demand */
+    private LogIndex index;
 
 
     public ProgramRun() {
-        relation_map = new HashMap<String, Relation>();
-        runtime = -1.0;
+        this(new SymbolTable());
     }
 
-    public void update() {
-        tot_rec_tup = getTotNumRecTuples().doubleValue();
-        tot_copy_time = getTotCopyTime();
+    private ProgramRun(SymbolTable symbols) {
+        this.symbols = symbols;
+        relation_map = new HashMap<String, Relation>();
+        relation_index = new Relation[64];
+        runtime = -1.0;
     }
 
     /**
-     * Inserts profile data from part into data model.
+     * Inserts profile data of an event into data model.
      * 
-     * @param data
+     * @param event
      */
-    public void process(String[] data) {
+    @Override
+    public void process(ProfileEvent event) {
+        version++;
+
+        if (event.getKind() == ProfileEvent.Kind.RUNTIME) {
+            this.runtime = event.getTime();
 
-        if (data[0].equals("runtime")) {
-            this.runtime = Double.parseDouble(data[1]);
+        } else if (event.getKind() == ProfileEvent.Kind.STRATUM_TIME) {
+            scc.clear();
+            if (event.hasInterval()) {
+                timeline.addStratum(event.getVersion(), event.getStart(), event.getEnd());
+            }
 
         } else {
 
-            Relation rel;
-            if (!relation_map.containsKey(data[1])) {
-                rel = new Relation(data[1], createId());
-                relation_map.put(data[1], rel);
-            } else {
-                rel = relation_map.get(data[1]);
+            int name = event.getRelation();
+            if (name >= relation_index.length) {
+                relation_index = Arrays.copyOf(relation_index,
+                        Math.max(name + 1, 2 * relation_index.length));
+            }
+            Relation rel = relation_index[name];
+            if (rel == null) {
+                rel = new Relation(symbols, name, createId());
+                rel.setWindow(window);
+                relation_index[name] = rel;
+                relation_map.put(rel.getName(), rel);
             }
 
-            if (data[0].contains("nonrecursive")) {
+            if (!rel.isModified()) {
+                rel.setModified(true);
+                modified.add(rel);
+            }
+            if (notifier != null && event.getRule() != ProfileEvent.NONE) {
+                modified_rules.add(event.getRule());
+            }
 
-                if (data[0].charAt(0) == 't' && data[0].contains("relation")) {
-                    rel.setRuntime(Double.parseDouble(data[3]));
-                    rel.setLocator(data[2]);
+            long num_tup = rel.getTotNum_tuples();
+            long rec_tup = rel.getTotNumRec_tuples();
+            double rule_time = 0;
+            if (rule_ranking != null && event.getKind() == ProfileEvent.Kind.NONREC_RULE_TIME
+                    && rel.getRuleMap().containsKey(event.getRule())) {
+                rule_time = rel.getRuleMap().get(event.getRule()).getRuntime();
+            }
 
-                } else if (data[0].charAt(0) == 'n'
-                        && data[0].contains("relation")) {
-                    rel.setNum_tuples(Long.parseLong(data[3]));
+            dispatch(rel, event);
+            track(rel, event);
+            if (event.getKind() == ProfileEvent.Kind.REC_RELATION_COPY) {
+                // every iteration is completed by exactly one copy event
+                tot_copy_time += event.getTime();
+            }
+            if (event.hasInterval() && event.getKind() != ProfileEvent.Kind.NONREC_RULE_TIME
+                    && event.getKind() != ProfileEvent.Kind.REC_RULE_TIME) {
+                timeline.addRelation(name, event.getStart(), event.getEnd());
+            }
+
+            tot_num_tup += rel.getTotNum_tuples() - num_tup;
+            tot_rec_tup += rel.getTotNumRec_tuples() - rec_tup;
+            if (relation_ranking != null) {
+                rank(rel, event, rule_time, rel.getTotNumRec_tuples() - rec_tup);
+            }
+        }
+
+    }
+
+    /**
+     * Updates the ranking of a relation and of the rule of an event, with the
+     * times and tuples the table rows would show, except for the copy time
+     * per tuple, which only is known when the ranking is queried.
+     * 
+     * @param rule_time runtime of a non-recursive rule before the event
+     * @param rec_tuples new tuples of recursive rules added by the event
+     */
+    private void rank(Relation rel, ProfileEvent event, double rule_time, long rec_tuples) {
+        int name = rel.getNameSymbol();
+        relation_ranking.set(name, rel.getNonRecTime() + rel.getRecTime() + rel.getCopyTime(), 0);
+        if (event.getRule() == ProfileEvent.NONE) {
+            return;
+        }
+        long key = ((long) name << 32) | (event.getRule() & 0xffffffffL);
+        double a = rule_ranking.getA(key);
+        double b = rule_ranking.getB(key);
+        switch (event.getKind()) {
+        case NONREC_RULE_TIME:
+            // a rule that is also evaluated recursively is not charged copy time
+            a += event.getTime() - rule_time;
+            b = 0;
+            break;
+        case REC_RULE_TIME:
+            a += event.getTime();
+            break;
+        case REC_RULE_SIZE:
+            if (!rel.getRuleMap().containsKey(event.getRule())) {
+                b += rec_tuples;
+            }
+            break;
+        default:
+            break;
+        }
+        rule_ranking.set(key, a, b);
+    }
+
+    /**
+     * Follows the recursive relations of the stratum being evaluated. A
+     * stratum ends with its timer or with the events of a non-recursive
+     * relation. Without timers, a relation that joins after the others
+     * started their second iteration belongs to the next recursive stratum.
+     */
+    private void track(Relation rel, ProfileEvent event) {
+        switch (event.getKind()) {
+        case NONREC_RELATION_TIME:
+        case NONREC_RELATION_SIZE:
+        case NONREC_RULE_TIME:
+        case NONREC_RULE_SIZE:
+            scc.clear();
+            break;
+        default:
+            if (!scc.contains(rel.getNameSymbol())) {
+                for (int name : scc) {
+                    if (relation_index[name].getIterationTable().size() > 1) {
+                        scc.clear();
+                        break;
+                    }
+                }
+                scc.add(rel.getNameSymbol());
+            }
+            break;
+        }
+    }
+
+    /**
+     * @return the recursive relations of the stratum being evaluated, empty
+     *         if the run is between strata or was loaded from an index
+     */
+    public List<Relation> getActiveStratum() {
+        List<Relation> result = new ArrayList<Relation>(scc.size());
+        for (int name : scc) {
+            result.add(relation_index[name]);
+        }
+        return result;
+    }
+
+    /**
+     * Maintains a ranking of the relations and rules by total time as events
+     * are processed, for the top rows of a live run. Must be called before
+     * any event is processed.
+     */
+    public void enableRanking() {
+        relation_ranking = new Ranking<Integer>();
+        rule_ranking = new Ranking<Long>();
+    }
+
+    /**
+     * @return the rows of the n relations of the highest total time, or null
+     *         if no ranking is maintained
+     */
+    public DataRow[] getTopRelations(int n) {
+        if (relation_ranking == null) {
+            return null;
+        }
+        List<Integer> names = relation_ranking.top(n, 0);
+        DataRow[] rows = new DataRow[names.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = getRelRow(relation_index[names.get(i)]);
+        }
+        return rows;
+    }
 
-                } else if (data[0].contains("rule")) {
-                    rel.addRule(data);
+    /**
+     * @return the rows of the n rules of the highest total time, or null if
+     *         no ranking is maintained
+     */
+    public DataRow[] getTopRules(int n) {
+        if (rule_ranking == null) {
+            return null;
+        }
+        double copy_time = tot_rec_tup != 0 ? tot_copy_time / tot_rec_tup : 0;
+        List<Long> keys = rule_ranking.top(n, copy_time);
+        // only the rules of the relations of the top rules are computed
+        Map<Integer, Map<String, DataRow>> tables = new HashMap<Integer, Map<String, DataRow>>();
+        List<DataRow> rows = new ArrayList<DataRow>(keys.size());
+        for (long key : keys) {
+            int name = (int) (key >>> 32);
+            Map<String, DataRow> table = tables.get(name);
+            if (table == null) {
+                table = new HashMap<String, DataRow>();
+                for (DataRow row : getRulTable(symbols.resolve(name))) {
+                    table.put(row.getName(), row);
                 }
+                tables.put(name, table);
+            }
+            DataRow row = table.get(symbols.resolve((int) key));
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+        return rows.toArray(new DataRow[rows.size()]);
+    }
 
-            } else if (data[0].contains("recursive")) {
-                rel.addIteration(data);
+    /**
+     * Inserts profile data of an event into its relation.
+     */
+    public static void dispatch(Relation rel, ProfileEvent event) {
+        switch (event.getKind()) {
+        case NONREC_RELATION_TIME:
+            rel.setRuntime(event.getTime());
+            rel.setLocator(event.getLocator());
+            break;
+        case NONREC_RELATION_SIZE:
+            rel.setNum_tuples(event.getTuples());
+            break;
+        case NONREC_RULE_TIME:
+        case NONREC_RULE_SIZE:
+            rel.addRule(event);
+            break;
+        default:
+            rel.addIteration(event);
+            break;
+        }
+    }
+
+    /**
+     * Publishes a snapshot of the current state of this run. Only relations
+     * that changed since the last snapshot are copied, all others are shared
+     * with it.
+     */
+    @Override
+    public void flush() {
+        ProgramRun previous = snapshot;
+        ProgramRun copy = new ProgramRun(symbols);
+        copy.runtime = runtime;
+        copy.version = version;
+        copy.rel_id = rel_id;
+        copy.tot_num_tup = tot_num_tup;
+        copy.tot_rec_tup = tot_rec_tup;
+        copy.tot_copy_time = tot_copy_time;
+        copy.timeline = timeline.copy();
+        copy.scc.addAll(scc);
+        if (relation_ranking != null) {
+            copy.relation_ranking = relation_ranking.copy();
+            copy.rule_ranking = rule_ranking.copy();
+        }
+        copy.relation_index = new Relation[relation_index.length];
+        for (Relation rel : relation_map.values()) {
+            int name = rel.getNameSymbol();
+            Relation rel_copy;
+            if (previous == null || rel.isModified() || name >= previous.relation_index.length
+                    || previous.relation_index[name] == null) {
+                rel_copy = rel.copy();
+            } else {
+                rel_copy = previous.relation_index[name];
             }
+            copy.relation_index[name] = rel_copy;
+            copy.relation_map.put(rel_copy.getName(), rel_copy);
+        }
+        copy.snapshot = copy;
+        this.snapshot = copy;
+        if (notifier != null && notifier.hasSubscriptions()) {
+            Set<String> relations = new HashSet<String>();
+            for (Relation rel : modified) {
+                relations.add(rel.getName());
+            }
+            Set<String> rules = new HashSet<String>();
+            for (int rule : modified_rules) {
+                rules.add(symbols.resolve(rule));
+            }
+            notifier.publish(new ChangeBatch(copy, relations, rules));
+        }
+        for (Relation rel : modified) {
+            rel.setModified(false);
         }
+        modified.clear();
+        modified_rules.clear();
+    }
 
+    /**
+     * Subscribes to the changes of the snapshots published from now on.
+     * 
+     * @param interval minimum time in ms between two deliveries
+     */
+    public synchronized ChangeNotifier.Subscription subscribe(ChangeListener listener, long interval) {
+        if (notifier == null) {
+            notifier = new ChangeNotifier();
+        }
+        return notifier.subscribe(listener, interval);
     }
 
     /**
-     * @return
+     * Writes the model, the relations have to be loaded before the symbol
+     * table is written.
      */
+    public void write(SnapshotFile.Output out) throws IOException {
+        out.putDouble(runtime);
+        out.putInt(rel_id);
+        out.putLong(tot_num_tup);
+        out.putLong(tot_rec_tup);
+        out.putDouble(tot_copy_time);
+        timeline.write(out, symbols);
+        out.putInt(relation_map.size());
+        for (Relation rel : relation_map.values()) {
+            rel.write(out);
+        }
+    }
+
+    /**
+     * Reads the model of a snapshot into this empty run.
+     */
+    public void read(SnapshotFile.Input in) {
+        runtime = in.getDouble();
+        rel_id = in.getInt();
+        tot_num_tup = in.getLong();
+        tot_rec_tup = in.getLong();
+        tot_copy_time = in.getDouble();
+        timeline = Timeline.read(in, symbols);
+        int n = in.getInt();
+        for (int i = 0; i < n; i++) {
+            add(Relation.read(in, symbols));
+        }
+    }
+
+    /**
+     * @return the number of events processed, tables built from the model
+     *         are valid as long as it does not change
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the latest snapshot of this run. A snapshot is never changed,
+     * so it can be read by another thread while this run consumes events.
+     * 
+     * @return the snapshot published by the last flush, or null
+     */
+    public ProgramRun getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Gives the next relation of the run the id R<n>, for a run that only
+     * receives the events of some relations of a log.
+     */
+    public void setNextId(int n) {
+        this.rel_id = n - 1;
+    }
+
     private String createId() {
         this.rel_id++;
         return "R" + this.rel_id;
@@ -122,6 +465,13 @@ public class ProgramRun implements Serializable{
         return result.toString();
     }
 
+    /**
+     * @return the symbol table of the strings of this run
+     */
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
     public Map<String, Relation> getRelation_map() {
         return relation_map;
     }
@@ -134,27 +484,39 @@ public class ProgramRun implements Serializable{
     }
 
     public Long getTotNumTuples() {
-        Long result = 0L;
-        for (Relation r : relation_map.values()) {
-            result += r.getTotNum_tuples();
-        }
-        return result;
+        return tot_num_tup;
     }
 
     public Long getTotNumRecTuples() {
-        Long result = 0L;
-        for (Relation r : relation_map.values()) {
-            result += r.getTotNumRec_tuples();
-        }
-        return result;
+        return tot_rec_tup;
     }
 
     public double getTotCopyTime() {
-        double result = 0;
-        for (Relation r : relation_map.values()) {
-            result += r.getCopyTime();
-        }
-        return result;
+        return tot_copy_time;
+    }
+
+    public Timeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * Switches to streaming mode, which keeps only the most recent
+     * iterations of each relation for graphs, and folds all others into the
+     * running totals. Memory then stays flat however long the log is. Must
+     * be set before any event is processed.
+     * 
+     * @param window number of iterations kept per relation, 0 to keep all
+     */
+    public void setWindow(int window) {
+        this.window = window;
+        timeline.setLimit(window > 0 ? TIMELINE_LIMIT : 0);
+    }
+
+    /**
+     * @return whether only the most recent iterations are kept
+     */
+    public boolean isStreaming() {
+        return window > 0;
     }
 
     public double getTotTime() {
@@ -165,383 +527,265 @@ public class ProgramRun implements Serializable{
         return  result;
     }
 
-    /*
-        rel table :
-        ROW[0] = TOT_T
-        ROW[1] = NREC_T
-        ROW[2] = REC_T
-        ROW[3] = COPY_T
-        ROW[4] = TUPLES
-        ROW[5] = REL NAME
-        ROW[6] = ID
-        ROW[7] = SRC
-        ROW[8] = PERFOR
-
+    /**
+     * @return a row for each relation
      */
-    public Object[][] getRelTable() {
-        Object[][] table = new Object[relation_map.size()][];
+    public DataRow[] getRelTable() {
+        DataRow[] table = new DataRow[relation_map.size()];
         int i = 0;
         for (Relation r : relation_map.values()) {
-            Object[] row = new Object[9];
-            row[0] = r.getNonRecTime() + r.getRecTime() + r.getCopyTime();
-            row[1] = r.getNonRecTime();
-            row[2] = r.getRecTime();
-            row[3] = r.getCopyTime();
-            row[4] = r.getNum_tuplesRel();
-            row[5] = r.getName();
-            row[6] = r.getId();
-            row[7] = r.getLocator();
-            if ((Double)row[0] != 0.0) {
-                row[8] = (Double)((Long)row[4]/(Double)row[0]);
-            } else {
-                row[8] = (Double)((Long)row[4]/1.0);
-            }
-            table[i++] = row;
+            table[i++] = getRelRow(r);
         }
         return table;
     }
 
-    /*
-        rul table :
-        ROW[0] = TOT_T
-        ROW[1] = NREC_T
-        ROW[2] = REC_T
-        ROW[3] = COPY_T
-        ROW[4] = TUPLES
-        ROW[5] = RUL NAME
-        ROW[6] = ID
-        ROW[7] = SRC
-        ROW[8] = PERFOR
-        ROW[9] = VER
-        ROW[10]= REL_NAME
+    /**
+     * @return the row of a relation in the relation table
      */
-    public Object[][] getRulTableGui() {
-        Map<String, Object[]> rule_map = new HashMap<String, Object[]>();
+    public DataRow getRelRow(Relation r) {
+        DataRow row = new DataRow(r.getName(), r.getId());
+        row.setNonrec_time(r.getNonRecTime());
+        row.setRec_time(r.getRecTime());
+        row.setCopy_time(r.getCopyTime());
+        row.setNum_tuples(r.getNum_tuplesRel());
+        row.setLocator(r.getLocator());
+        if (r.getIterationTable().getRuntimes().getCount() > 0) {
+            row.setRuntimes(r.getIterationTable().getRuntimes());
+        }
+        row.updateTot_time();
+        return row;
+    }
 
+    /**
+     * @return a row for each rule, the versions of a recursive rule are
+     *         summed up
+     */
+    public DataRow[] getRulTable() {
+        loadAll();
+        Map<String, DataRow> rule_map = new HashMap<String, DataRow>();
         for (Relation rel : relation_map.values()) {
-            for (Rule rul : rel.getRuleMap().values()) {
-                Object[] temp = new Object[11];
-                temp[1] = rul.getRuntime();
-                temp[2] = 0.0;
-                temp[3] = 0.0;
-                temp[4] = rul.getNum_tuples();
-                temp[5] = rul.getName();
-                temp[6] = rul.getId();
-                temp[7] = rul.getLocator();
-                temp[9] = 0;
-                temp[10] = rel.getName();
-                rule_map.put(rul.getName(), temp);
-            }
-
-            for (Iteration iter : rel.getIterations()) {
-                Object[] temp;
-                for (RuleRecursive rul : iter.getRul_rec().values()) {
-
-                    if (rule_map.containsKey(rul.getName())) {
-                        temp = rule_map.get(rul.getName());
-                        temp[2] = (Double) temp[2] + (Double) rul.getRuntime();
-                        temp[4] = (Long) temp[4] + rul.getNum_tuples();
-                    } else {
-                        temp = new Object[11];
-                        temp[1] = 0.0;
-                        temp[2] = (Double) rul.getRuntime();
-                        temp[3] = 0.0;
-                        temp[4] = (Long) rul.getNum_tuples();
-                        temp[6] = rul.getId();
-                        temp[5] = rul.getName();
-                        temp[9] = rul.getVersion();
-                        temp[10] = rel.getName();
-
-                    }
-                    temp[0] = rul.getRuntime();
-                    rule_map.put(rul.getName(), temp);
-                }
-            }
-            for (Object[] t : rule_map.values()) {
-                if (((String) t[6]).charAt(0) == 'C') {
-                    if (getTotNumRecTuples() != 0) {
-                        t[3] = (getTotCopyTime() / getTotNumRecTuples()) * (Long) t[4];
-                    } else {
-                        t[3] = 0.0;
-                    }
-                }
-                t[0] = (Double) t[1] + (Double) t[2] + (Double) t[3];
-
-                if ((Double)t[0] != 0.0) {
-                    t[8] = (Double)((Long)t[4]/(Double)t[0]);
-                } else {
-                    t[8] = (Double)((Long)t[4]/1.0);
-                }
-            }
+            addRules(rule_map, rel);
         }
-        Object[][] table = new Object[rule_map.size()][];
-        int i = 0;
-        for (Object[] row : rule_map.values()) {
-            table[i++] = row;
-        }
-        return table;
+        return getRulTable(rule_map);
     }
 
-    /*
-        rul table :
-        ROW[0] = TOT_T
-        ROW[1] = NREC_T
-        ROW[2] = REC_T
-        ROW[3] = COPY_T
-        ROW[4] = TUPLES
-        ROW[5] = RUL NAME
-        ROW[6] = ID
-        ROW[7] = REL_NAME
-        ROW[8] = VER
-        ROW[9] = PERFOR
-        ROW[10]= SRC
+    /**
+     * @return a row for each rule of the given relation
      */
-    public Object[][] getRulTable() {
-        Map<String, Object[]> rule_map = new HashMap<String, Object[]>();
+    public DataRow[] getRulTable(String relation) {
+        Map<String, DataRow> rule_map = new HashMap<String, DataRow>();
+        Relation rel = getRelation(relation);
+        if (rel != null) {
+            addRules(rule_map, rel);
+        }
+        return getRulTable(rule_map);
+    }
 
-        for (Relation rel : relation_map.values()) {
-            for (Rule rul : rel.getRuleMap().values()) {
-                Object[] temp = new Object[11];
-                temp[1] = rul.getRuntime();
-                temp[2] = 0.0;
-                temp[3] = 0.0;
-                temp[4] = rul.getNum_tuples();
-                temp[5] = rul.getName();
-                temp[6] = rul.getId();
-                temp[7] = rel.getName();
-                temp[8] = 0;
-                temp[10] = rul.getLocator();
-                rule_map.put(rul.getName(), temp);
-            }
+    private void addRules(Map<String, DataRow> rule_map, Relation rel) {
+        for (Rule rul : rel.getRuleMap().values()) {
+            DataRow row = new DataRow(rul.getName(), rul.getId());
+            row.setNonrec_time(rul.getRuntime());
+            row.setNum_tuples(rul.getNum_tuples());
+            row.setRelation(rel.getName());
+            row.setLocator(rul.getLocator());
+            rule_map.put(rul.getName(), row);
+        }
 
-            for (Iteration iter : rel.getIterations()) {
-                Object[] temp;
-                for (RuleRecursive rul : iter.getRul_rec().values()) {
-
-                    if (rule_map.containsKey(rul.getName())) {
-                        temp = rule_map.get(rul.getName());
-                        temp[2] = (Double) temp[2] + (Double) rul.getRuntime();
-                        temp[4] = (Long) temp[4] + rul.getNum_tuples();
-                    } else {
-                        temp = new Object[11];
-                        temp[1] = 0.0;
-                        temp[2] = (Double) rul.getRuntime();
-                        temp[3] = 0.0;
-                        temp[4] = (Long) rul.getNum_tuples();
-                        temp[6] = rul.getId();
-                        temp[5] = rul.getName();
-                        temp[7] = rel.getName();
-                        temp[8] = rul.getVersion();
-                    }
-                    temp[0] = rul.getRuntime();
-                    rule_map.put(rul.getName(), temp);
-                }
+        // the runtimes of all versions of a recursive rule
+        Map<String, QuantileSketch> runtimes = new HashMap<String, QuantileSketch>();
+        for (RuleSeries rul : rel.getIterationTable().getRuleSeries()) {
+            QuantileSketch sketch = runtimes.get(rul.getName());
+            if (sketch == null) {
+                sketch = new QuantileSketch();
+                runtimes.put(rul.getName(), sketch);
             }
+            sketch.addAll(rul.getRuntimes());
 
-            for (Object[] t : rule_map.values()) {
-                if (((String) t[6]).charAt(0) == 'C') {
-                    if (getTotNumRecTuples() != 0) {
-                        t[3] = (getTotCopyTime() / getTotNumRecTuples()) * (Long) t[4];
-                    } else {
-                        t[3] = 0.0;
-                    }
-                }
-                t[0] = (Double) t[1] + (Double) t[2] + (Double) t[3];
-
-                if ((Double)t[0] != 0.0) {
-                    t[9] = (Double)((Long)t[4]/(Double)t[0]);
-                } else {
-                    t[9] = (Double)((Long)t[4]/1.0);
-                }
+            DataRow row = rule_map.get(rul.getName());
+            if (row != null) {
+                row.setRec_time(row.getRec_time() + rul.getTotRuntime());
+                row.setNum_tuples(row.getNum_tuples() + rul.getTotNum_tuples());
+            } else {
+                row = new DataRow(rul.getName(), rul.getId());
+                row.setRec_time(rul.getTotRuntime());
+                row.setNum_tuples(rul.getTotNum_tuples());
+                row.setRelation(rel.getName());
+                row.setVersion(rul.getVersion());
+                rule_map.put(rul.getName(), row);
             }
         }
-        Object[][] table = new Object[rule_map.size()][];
+        for (Map.Entry<String, QuantileSketch> entry : runtimes.entrySet()) {
+            rule_map.get(entry.getKey()).setRuntimes(entry.getValue());
+        }
+    }
+
+    private DataRow[] getRulTable(Map<String, DataRow> rule_map) {
+        DataRow[] table = new DataRow[rule_map.size()];
         int i = 0;
-        for (Object[] row : rule_map.values()) {
+        for (DataRow row : rule_map.values()) {
+            updateRulRow(row);
             table[i++] = row;
         }
         return table;
     }
 
-    /*
-     ver table :
-      ROW[0] = TOT_T
-     ROW[1] = NREC_T
-     ROW[2] = REC_T
-     ROW[3] = COPY_T
-     ROW[4] = TUPLES
-     ROW[5] = RUL NAME
-     ROW[6] = ID
-     ROW[7] = SRC
-     ROW[8] = PERFOR
-     ROW[9] = VER
-     ROW[10]= REL_NAME
+    /**
+     * Charges the row of a recursive rule with its share of the copy time of
+     * the run, and updates the total time of the row.
      */
-    public Object[][] getVersionsGui(String strRel, String strRul) {
-        Map<String, Object[]> rule_map = new HashMap<String, Object[]>();
+    public void updateRulRow(DataRow row) {
+        if (row.getId().charAt(0) == 'C') {
+            row.setCopy_time(getCopyTime(row.getNum_tuples()));
+        }
+        row.updateTot_time();
+    }
+
+    /**
+     * @return a row for each version of the given recursive rule
+     */
+    public DataRow[] getVersions(String strRel, String strRul) {
+        Map<String, DataRow> rule_map = new HashMap<String, DataRow>();
 
         for (Relation rel : relation_map.values()) {
             if (rel.getId().equals(strRel)) {
-
-                for (Iteration iter : rel.getIterations()) {
-                    Object[] temp;
-                    for (RuleRecursive rul : iter.getRul_rec().values()) {
-
-                        if (rul.getId().equals(strRul)) {
-                            String strTemp = rul.getName() + rul.getLocator()
-                                    + rul.getVersion();
-                            if (rule_map.containsKey(strTemp)) {
-                                temp = rule_map.get(strTemp);
-                                temp[2] = (Double) temp[2]
-                                        + (Double) rul.getRuntime();
-                                temp[4] = (Long) temp[4] + rul.getNum_tuples();
-
-                            } else {
-                                temp = new Object[11];
-                                temp[1] = 0.0;
-                                temp[2] = (Double) rul.getRuntime();
-                                temp[4] = (Long) rul.getNum_tuples();
-                                temp[5] = rul.getName();
-                                temp[6] = rul.getId();
-                                temp[7] = rul.getLocator();
-                                temp[8] = rul.getVersion();
-                                temp[10] = rel.getName(); 
-                            }
-                            temp[0] = rul.getRuntime();
-                            rule_map.put(strTemp, temp);
-                        }
-                    }
-                }
-                for (Object[] t : rule_map.values()) {
-                    if (tot_rec_tup != 0) {
-                        Double rec_tup = (Double) t[4];
-                        t[3] = (tot_copy_time / tot_rec_tup) * rec_tup;
-                    } else {
-                        t[3] = 0.0;
-                    }
-                    t[0] = (Double) t[1] + (Double) t[2] + (Double) t[3];
-                    if ((Double) t[0] != 0.0) {
-                        t[9] = (Double) ((Long) t[4] / (Double) t[0]);
-                    } else {
-                        t[9] = (Double) ((Long) t[4] / 1.0);
+                rel = load(rel);
+
+                for (RuleSeries rul : rel.getIterationTable().getRuleSeries()) {
+                    if (rul.getId().equals(strRul)) {
+                        String strTemp = rul.getName() + rul.getLocator()
+                                + rul.getVersion();
+                        DataRow row = new DataRow(rul.getName(), rul.getId());
+                        row.setRec_time(rul.getTotRuntime());
+                        row.setNum_tuples(rul.getTotNum_tuples());
+                        row.setRelation(rel.getName());
+                        row.setVersion(rul.getVersion());
+                        row.setLocator(rul.getLocator());
+                        row.setRuntimes(rul.getRuntimes());
+                        row.setCopy_time(getCopyTime(row.getNum_tuples()));
+                        row.updateTot_time();
+                        rule_map.put(strTemp, row);
                     }
                 }
                 break;
             }
 
         }
-        Object[][] table = new Object[rule_map.size()][];
-        int i = 0;
-        for (Object[] row : rule_map.values()) {
-            table[i++] = row;
-        }
-        return table;
+        return rule_map.values().toArray(new DataRow[rule_map.size()]);
     }
 
-    /*
-        rul table :
-        ROW[0] = TOT_T
-        ROW[1] = NREC_T
-        ROW[2] = REC_T
-        ROW[3] = COPY_T
-        ROW[4] = TUPLES
-        ROW[5] = RUL NAME
-        ROW[6] = ID
-        ROW[7] = REL_NAME
-        ROW[8] = VER
-        ROW[9] = LOCATOR
+    /**
+     * @return the share of the copy time of the given number of new tuples
+     *         of recursive rules
      */
-    public Object[][] getVersions(String strRel, String strRul) {
-        Map<String, Object[]> rule_map = new HashMap<String, Object[]>();
+    private double getCopyTime(long num_tuples) {
+        if (tot_rec_tup != 0) {
+            return (tot_copy_time / tot_rec_tup) * num_tuples;
+        }
+        return 0.0;
+    }
 
-        for (Relation rel : relation_map.values()) {
-            if (rel.getId().equals(strRel)) {
+    /**
+     * @return the relation with its rules and iterations, or null
+     */
+    public Relation getRelation(String name) {
+        Relation rel = relation_map.get(name);
+        if (rel != null) {
+            rel = load(rel);
+        }
+        return rel;
+    }
 
-                for (Iteration iter : rel.getIterations()) {
-                    Object[] temp;
-                    for (RuleRecursive rul : iter.getRul_rec().values()) {
-
-                        if (rul.getId().equals(strRul)) {
-                            String strTemp = rul.getName() + rul.getLocator()
-                                    + rul.getVersion();
-                            if (rule_map.containsKey(strTemp)) {
-                                temp = rule_map.get(strTemp);
-                                temp[2] = (Double) temp[2]
-                                        + (Double) rul.getRuntime();
-                                temp[4] = (Long) temp[4] + rul.getNum_tuples();
-
-                            } else {
-                                temp = new Object[10];
-                                temp[1] = 0.0;
-                                temp[2] = (Double) rul.getRuntime();
-                                temp[4] = (Long) rul.getNum_tuples();
-                                temp[5] = rul.getName();
-                                temp[6] = rul.getId();
-                                temp[7] = rel.getName();
-                                temp[8] = rul.getVersion();
-                                temp[9] = rul.getLocator();
-                            }
-                            temp[0] = rul.getRuntime();
-                            rule_map.put(strTemp, temp);
-                        }
-                    }
-                }
-                for (Object[] t : rule_map.values()) {
-                    if (getTotNumRecTuples() != 0) {
-                        t[3] = (getTotCopyTime() / getTotNumRecTuples()) * (Long) t[4];
-                    } else {
-                        t[3] = 0.0;
-                    }
-                    t[0] = (Double) t[1] + (Double) t[2] + (Double) t[3];
-                }
-                break;
-            }
+    /**
+     * Makes the run load the rules and iterations of its relations from the
+     * log when they are needed. Until then a relation only has the totals
+     * read from the index.
+     */
+    public void setIndex(LogIndex index) {
+        this.index = index;
+    }
 
+    /**
+     * @return the relation with its rules and iterations, loaded from the
+     *         log if the relation was only read from the index
+     */
+    private Relation load(Relation rel) {
+        if (index == null || !index.contains(rel.getName())) {
+            return rel;
         }
-        Object[][] table = new Object[rule_map.size()][];
-        int i = 0;
-        for (Object[] row : rule_map.values()) {
-            table[i++] = row;
+        try {
+            Relation loaded = index.load(rel, symbols);
+            relation_index[loaded.getNameSymbol()] = loaded;
+            relation_map.put(loaded.getName(), loaded);
+            return loaded;
+        } catch (IOException e) {
+            System.err.println("Error: cannot load relation " + rel.getName() + ": " + e.getMessage());
+            return rel;
         }
-        return table;
     }
 
+    /**
+     * Loads the rules and iterations of all relations.
+     */
+    public void loadAll() {
+        if (index != null) {
+            try {
+                for (Relation rel : index.loadAll(relation_map.values(), symbols)) {
+                    add(rel);
+                }
+            } catch (IOException e) {
+                System.err.println("Error: cannot load relations: " + e.getMessage());
+            }
+            index = null;
+        }
+    }
 
+    public void writeSummary(SnapshotFile.Output out) throws IOException {
+        out.putDouble(runtime);
+        out.putInt(rel_id);
+        out.putLong(tot_num_tup);
+        out.putLong(tot_rec_tup);
+        out.putDouble(tot_copy_time);
+        timeline.write(out, symbols);
+        out.putInt(relation_map.size());
+        for (Relation rel : relation_map.values()) {
+            rel.writeSummary(out);
+        }
+    }
 
-    public Relation getRelation(String name) {
-        for (Relation rel : getRelation_map().values()) {
-            if (rel.getName().equals(name)) {
-                return rel;
-            }
+    /**
+     * Reads the totals of an index into this empty run.
+     */
+    public void readSummary(SnapshotFile.Input in) {
+        runtime = in.getDouble();
+        rel_id = in.getInt();
+        tot_num_tup = in.getLong();
+        tot_rec_tup = in.getLong();
+        tot_copy_time = in.getDouble();
+        timeline = Timeline.read(in, symbols);
+        int n = in.getInt();
+        for (int i = 0; i < n; i++) {
+            add(Relation.readSummary(in, symbols));
         }
-        return null;
-    }
-
-    public String[][] formatTable(Object[][] table, int precision) {
-        String[][] new_table = new String[table.length][table[0].length];
-        for (int i = 0; i < table.length; i++) {
-            for (int j = 0; j < table[0].length; j++) {
-                if (table[i][j] instanceof Double) {
-                    new_table[i][j] = formatTime((Double)table[i][j]);
-                } else if (table[i][j] instanceof Long) {
-                    new_table[i][j] = formatNum(precision, (Long)table[i][j]);
-                } else if (table[i][j] != null) {
-                    new_table[i][j] = table[i][j].toString();
-                } else {
-                    new_table[i][j] = "-";
-                }
-            }
+    }
+
+    private void add(Relation rel) {
+        int name = rel.getNameSymbol();
+        if (name >= relation_index.length) {
+            relation_index = Arrays.copyOf(relation_index,
+                    Math.max(name + 1, 2 * relation_index.length));
         }
-        return new_table;
+        relation_index[name] = rel;
+        relation_map.put(rel.getName(), rel);
     }
 
     public String formatNum(int precision, Object number) {
-        Long amount;
         if (number != null && number instanceof Long) {
-            amount = (Long) number;
-        } else {
-            return "0";
+            return formatNum(precision, ((Long) number).longValue());
         }
+        return "0";
+    }
+
+    public String formatNum(int precision, long amount) {
         if (precision == -1) {
             return Long.toString(amount);
         }
@@ -571,11 +815,14 @@ public class ProgramRun implements Serializable{
     }
 
     public String formatTime(Object number) {
-        Double time = null;
         if (number instanceof Double) {
-            time = (Double) number;
+            return formatTime(((Double) number).doubleValue());
         }
-        if (time == null || time.isNaN()) {
+        return "-";
+    }
+
+    public String formatTime(double time) {
+        if (Double.isNaN(time)) {
             return "-";
         }
 
@@ -601,10 +848,10 @@ public class ProgramRun implements Serializable{
             return sec + "";
         } else if (Double.compare(time, 1.0) >= 0) {
             DecimalFormat formatter = new DecimalFormat("0.00");
-            return formatter.format(number);
+            return formatter.format(time);
         } else if (Double.compare(time, 0.001) >= 0) {
             DecimalFormat formatter = new DecimalFormat(".000");
-            return formatter.format(number);
+            return formatter.format(time);
         }
         return ".000";
     }
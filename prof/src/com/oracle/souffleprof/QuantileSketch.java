@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.oracle.souffleprof;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Profile Data Model
+ *
+ * Streaming quantiles of a distribution of times, e.g., of the runtimes of
+ * a rule in each iteration. Values are counted in buckets whose bounds grow
+ * geometrically, so each quantile is within 1% of an actual value while the
+ * memory only depends on the ratio of the largest to the smallest value,
+ * not on the number of values. The maximum is exact.
+ */
+public class QuantileSketch {
+
+    /** Relative accuracy of a quantile */
+    private static final double ACCURACY = 0.01;
+    private static final double GAMMA = (1 + ACCURACY) / (1 - ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    /** Values below are counted as zero, times are not measured this precisely */
+    private static final double MIN_VALUE = 1e-9;
+
+    /** Counts of the buckets from offset on, bucket i holds (GAMMA^(i-1), GAMMA^i] */
+    private int[] counts = new int[0];
+    private int offset = 0;
+    private long zeros = 0;
+    private long count = 0;
+    private double max = Double.NaN;
+
+    /**
+     * @return a copy of this sketch that is not affected by later changes
+     */
+    public QuantileSketch copy() {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.counts = Arrays.copyOf(counts, counts.length);
+        sketch.offset = offset;
+        sketch.zeros = zeros;
+        sketch.count = count;
+        sketch.max = max;
+        return sketch;
+    }
+
+    public void add(double value) {
+        update(value, 1);
+        if (!(value <= max)) {
+            max = value;
+        }
+    }
+
+    /**
+     * Replaces a value added before, e.g., when a rule is evaluated more than
+     * once in an iteration. The maximum is not lowered by a smaller value.
+     */
+    public void replace(double old_value, double value) {
+        update(old_value, -1);
+        add(value);
+    }
+
+    /**
+     * Adds all values of another sketch.
+     */
+    public void addAll(QuantileSketch other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (other.counts.length > 0) {
+            reserve(other.offset);
+            reserve(other.offset + other.counts.length - 1);
+            for (int i = 0; i < other.counts.length; i++) {
+                counts[other.offset + i - offset] += other.counts[i];
+            }
+        }
+        zeros += other.zeros;
+        count += other.count;
+        if (!(other.max <= max)) {
+            max = other.max;
+        }
+    }
+
+    private void update(double value, int n) {
+        count += n;
+        if (value < MIN_VALUE) {
+            zeros += n;
+            return;
+        }
+        int bucket = (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+        reserve(bucket);
+        counts[bucket - offset] += n;
+    }
+
+    /**
+     * Grows the counts to include the given bucket.
+     */
+    private void reserve(int bucket) {
+        if (counts.length == 0) {
+            counts = new int[16];
+            offset = bucket - 8;
+        } else if (bucket < offset) {
+            int shift = Math.max(offset - bucket, counts.length / 2);
+            int[] grown = new int[counts.length + shift];
+            System.arraycopy(counts, 0, grown, shift, counts.length);
+            counts = grown;
+            offset -= shift;
+        } else if (bucket >= offset + counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(bucket - offset + 1, counts.length * 3 / 2));
+        }
+    }
+
+    /**
+     * @param q the quantile, between 0 and 1
+     * @return the value of the quantile, NaN if there are no values
+     */
+    public double getQuantile(double q) {
+        if (count <= 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (q * (count - 1));
+        long seen = zeros;
+        if (rank < seen) {
+            return 0;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (rank < seen) {
+                // the value of least relative error in the bucket
+                double value = 2 * Math.pow(GAMMA, offset + i) / (GAMMA + 1);
+                return Math.min(value, max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return the largest value, NaN if there are no values
+     */
+    public double getMax() {
+        return count > 0 ? max : Double.NaN;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void write(SnapshotFile.Output out) throws IOException {
+        out.putInt(offset);
+        out.putInts(counts, counts.length);
+        out.putLong(zeros);
+        out.putLong(count);
+        out.putDouble(max);
+    }
+
+    public static QuantileSketch read(SnapshotFile.Input in) {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.offset = in.getInt();
+        sketch.counts = in.getInts(0);
+        sketch.zeros = in.getLong();
+        sketch.count = in.getLong();
+        sketch.max = in.getDouble();
+        return sketch;
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.oracle.souffleprof;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Profile Data Model
+ *
+ * Ranks relations or rules by a score of the form a + r * b, where a is the
+ * measured time of an entry, b its number of tuples that are charged with
+ * copy time, and r the copy time per tuple, which is only known when the
+ * ranking is queried. Entries are kept sorted by a and by b as events
+ * arrive, and the top entries are found with the threshold algorithm: both
+ * orders are scanned in parallel until no entry further down can beat the
+ * k-th best score seen. This usually visits few more than k entries.
+ *
+ * Both orders are persistent treaps: an update copies the path to the
+ * entry it changes and shares the rest of the tree, so a copy of the
+ * ranking merely shares the roots.
+ *
+ * @param <K> the key of an entry
+ */
+public class Ranking<K> {
+
+    private static final class Entry<K> {
+        final K key;
+        final double a;
+        final double b;
+        /** Breaks ties, so that entries with equal values are distinct */
+        final long order;
+        /** Heap order of the treaps, derived from the tie breaker */
+        final long priority;
+
+        Entry(K key, double a, double b, long order) {
+            this.key = key;
+            this.a = a;
+            this.b = b;
+            this.order = order;
+            // a mixing function spreads the consecutive orders
+            long h = order * 0x9E3779B97F4A7C15L;
+            h ^= h >>> 32;
+            h *= 0xD6E8FEB86659FD93L;
+            this.priority = h ^ (h >>> 32);
+        }
+
+        double score(double r) {
+            return a + r * b;
+        }
+    }
+
+    private static final Comparator<Entry<?>> BY_A = new Comparator<Entry<?>>() {
+        @Override
+        public int compare(Entry<?> x, Entry<?> y) {
+            int cmp = Double.compare(y.a, x.a);
+            return cmp != 0 ? cmp : Long.compare(x.order, y.order);
+        }
+    };
+
+    private static final Comparator<Entry<?>> BY_B = new Comparator<Entry<?>>() {
+        @Override
+        public int compare(Entry<?> x, Entry<?> y) {
+            int cmp = Double.compare(y.b, x.b);
+            return cmp != 0 ? cmp : Long.compare(x.order, y.order);
+        }
+    };
+
+    /**
+     * A node of a treap, nodes are never changed and may be shared.
+     */
+    private static final class Node<K> {
+        final Entry<K> entry;
+        final Node<K> left;
+        final Node<K> right;
+
+        Node(Entry<K> entry, Node<K> left, Node<K> right) {
+            this.entry = entry;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private Map<K, Entry<K>> entries = new HashMap<K, Entry<K>>();
+    private Node<K> by_a = null;
+    private Node<K> by_b = null;
+    private int size = 0;
+    private long next_order = 0;
+
+    /**
+     * @return a copy of this ranking that is not affected by later changes,
+     *         it can only be queried for the top entries
+     */
+    public Ranking<K> copy() {
+        Ranking<K> copy = new Ranking<K>();
+        // the values of an entry are only needed to update it
+        copy.entries = null;
+        copy.by_a = by_a;
+        copy.by_b = by_b;
+        copy.size = size;
+        copy.next_order = next_order;
+        return copy;
+    }
+
+    /**
+     * Sets the values of an entry.
+     */
+    public void set(K key, double a, double b) {
+        Entry<K> old = entries.get(key);
+        if (old != null) {
+            if (old.a == a && old.b == b) {
+                return;
+            }
+            by_a = remove(by_a, old, BY_A);
+            by_b = remove(by_b, old, BY_B);
+        } else {
+            size++;
+        }
+        Entry<K> entry = new Entry<K>(key, a, b, old != null ? old.order : next_order++);
+        entries.put(key, entry);
+        by_a = insert(by_a, entry, BY_A);
+        by_b = insert(by_b, entry, BY_B);
+    }
+
+    private static <K> Node<K> insert(Node<K> node, Entry<K> entry, Comparator<Entry<?>> order) {
+        if (node == null) {
+            return new Node<K>(entry, null, null);
+        }
+        if (order.compare(entry, node.entry) < 0) {
+            Node<K> left = insert(node.left, entry, order);
+            if (left.entry.priority > node.entry.priority) {
+                // rotate the new entry up
+                return new Node<K>(left.entry, left.left, new Node<K>(node.entry, left.right, node.right));
+            }
+            return new Node<K>(node.entry, left, node.right);
+        } else {
+            Node<K> right = insert(node.right, entry, order);
+            if (right.entry.priority > node.entry.priority) {
+                return new Node<K>(right.entry, new Node<K>(node.entry, node.left, right.left), right.right);
+            }
+            return new Node<K>(node.entry, node.left, right);
+        }
+    }
+
+    private static <K> Node<K> remove(Node<K> node, Entry<K> entry, Comparator<Entry<?>> order) {
+        int cmp = order.compare(entry, node.entry);
+        if (cmp < 0) {
+            return new Node<K>(node.entry, remove(node.left, entry, order), node.right);
+        } else if (cmp > 0) {
+            return new Node<K>(node.entry, node.left, remove(node.right, entry, order));
+        }
+        return merge(node.left, node.right);
+    }
+
+    /**
+     * @return the treap of all entries of left followed by those of right
+     */
+    private static <K> Node<K> merge(Node<K> left, Node<K> right) {
+        if (left == null) {
+            return right;
+        } else if (right == null) {
+            return left;
+        } else if (left.entry.priority > right.entry.priority) {
+            return new Node<K>(left.entry, left.left, merge(left.right, right));
+        }
+        return new Node<K>(right.entry, merge(left, right.left), right.right);
+    }
+
+    public double getA(K key) {
+        Entry<K> entry = entries.get(key);
+        return entry != null ? entry.a : 0;
+    }
+
+    public double getB(K key) {
+        Entry<K> entry = entries.get(key);
+        return entry != null ? entry.b : 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param r the copy time per tuple, not negative
+     * @return the keys of the k entries of the highest score, highest first
+     */
+    public List<K> top(int k, final double r) {
+        Comparator<Entry<K>> by_score = new Comparator<Entry<K>>() {
+            @Override
+            public int compare(Entry<K> x, Entry<K> y) {
+                int cmp = Double.compare(x.score(r), y.score(r));
+                return cmp != 0 ? cmp : Long.compare(y.order, x.order);
+            }
+        };
+        // the best entries seen, the worst of them first
+        PriorityQueue<Entry<K>> best = new PriorityQueue<Entry<K>>(Math.max(1, k), by_score);
+        Map<K, Boolean> seen = new HashMap<K, Boolean>();
+        // both orders hold all entries, an entry not seen yet has an a and a
+        // b at most those of the current position in the respective order
+        Iterator<Entry<K>> it_a = new InOrder<K>(by_a);
+        Iterator<Entry<K>> it_b = new InOrder<K>(by_b);
+        while (k > 0 && it_a.hasNext()) {
+            Entry<K> entry_a = it_a.next();
+            Entry<K> entry_b = it_b.next();
+            offer(best, seen, entry_a, k);
+            offer(best, seen, entry_b, k);
+            if (best.size() == k && best.peek().score(r) >= entry_a.a + r * entry_b.b) {
+                break;
+            }
+        }
+        List<K> result = new ArrayList<K>(best.size());
+        while (!best.isEmpty()) {
+            result.add(0, best.poll().key);
+        }
+        return result;
+    }
+
+    private static <K> void offer(PriorityQueue<Entry<K>> best, Map<K, Boolean> seen,
+            Entry<K> entry, int k) {
+        if (seen.put(entry.key, Boolean.TRUE) == null) {
+            best.add(entry);
+            if (best.size() > k) {
+                best.poll();
+            }
+        }
+    }
+
+    /**
+     * Iterates over the entries of a treap in order.
+     */
+    private static final class InOrder<K> implements Iterator<Entry<K>> {
+
+        private Deque<Node<K>> path = new ArrayDeque<Node<K>>();
+
+        InOrder(Node<K> root) {
+            descend(root);
+        }
+
+        private void descend(Node<K> node) {
+            for (; node != null; node = node.left) {
+                path.push(node);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !path.isEmpty();
+        }
+
+        @Override
+        public Entry<K> next() {
+            if (path.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node<K> node = path.pop();
+            descend(node.right);
+            return node.entry;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -28,18 +28,12 @@
 
 package com.oracle.souffleprof;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.io.RandomAccessFile;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.InputStream;
 
 /**
  * Reads the profile information from a file 
@@ -49,11 +43,11 @@ public class Reader {
 
     public ProgramRun run;
     private File file;
-    private static long filepointer;
     private boolean loaded = false;
     private boolean online;
-    RunnableThread R1;
-    String mes;
+    private int threads = 1;
+    private String relation;
+    private LogTailer tailer;
 
     public Reader(String arg, ProgramRun run, boolean vFlag, boolean online) {
         this.file = new File(arg);
@@ -64,54 +58,101 @@ public class Reader {
     public void readFile() {
 
         try {
-
-            if (online) {
-                RandomAccessFile r = new RandomAccessFile(file, "r");
-                String str = null;
-                filepointer = file.length();
-                while ((str = r.readLine()) != null) {
-
-                    if (!str.isEmpty() && str.charAt(0) == '@') {
-                        if (str.equals("@start-debug")) {
-                            continue;
-                        }
-                        String[] part;
-                        if (str.contains("\'") || str.contains("\"")) {
-                            part = replace(str);
-                        } else {
-                            part = str.substring(1).split("\\s*;\\s*");
-                        }
-                        mes = str;
-                        run.process(part);
-                    }
+            if (file.isFile() && SnapshotFile.isSnapshot(file)) {
+                // a snapshot is complete, there is nothing to follow
+                SnapshotFile.read(file, run);
+                this.loaded = true;
+                return;
+            }
+            if (file.isFile() && CompressedInput.isCompressed(file)) {
+                if (online) {
+                    this.loaded = false;
+                    System.err.println("Error: A compressed log cannot be followed, decompress it first");
+                    return;
+                }
+                readStream(CompressedInput.open(file));
+                return;
+            }
+            if (file.isFile() && BinaryLogParser.isBinaryLog(file)) {
+                if (online) {
+                    followBinary();
+                } else {
+                    readStream(new FileInputStream(file));
                 }
-                r.seek(r.getFilePointer());
-                r.close();
+                return;
+            }
+        } catch (IOException e) {
+            this.loaded = false;
+            System.err.println("Error: " + e.getMessage());
+            return;
+        }
+
+        // a filtered log is read sequentially, skipping the other relations
+        boolean filtered = relation != null && !online;
+        boolean parallel = threads > 1 && !filtered;
+        LogIndex.Builder index = null;
+        // in streaming mode the log is always read completely, the ranges
+        // of an index grow with the log
+        if (!online && !run.isStreaming()) {
+            LogIndex existing = LogIndex.open(file, run);
+            if (existing != null) {
+                // relations are parsed when their details are needed
+                run.setIndex(existing);
                 this.loaded = true;
-                R1 = new RunnableThread(file, filepointer, run);
-                new Thread(R1).start();
+                return;
+            }
+            if (!filtered) {
+                index = new LogIndex.Builder(parallel ? null : run);
+            }
+        }
 
-            } else {
-                BufferedReader br = new BufferedReader(new FileReader(file));
-                String str = null;
-                while ((str = br.readLine()) != null) {
+        if (online) {
+            // the top rows of a live run are kept up to date as it grows
+            run.enableRanking();
+        }
+        LogParser parser = new LogParser(index != null ? index : run, run.getSymbolTable());
+        if (index != null) {
+            index.setParser(parser);
+        }
+        if (filtered) {
+            parser.setFilter(new RelationFilter(relation, run));
+        }
+        ParallelLogParser parallel_parser = new ParallelLogParser(run, run.getSymbolTable(), threads);
+        if (parallel) {
+            parallel_parser.setIndex(index);
+        }
+        try {
 
-                    if (!str.isEmpty() && str.charAt(0) == '@') {
-                        if (str.equals("@start-debug")) {
-                            continue;
-                        }
-                        String[] part;
-                        if (str.contains("\'") || str.contains("\"")) {
-                            part = replace(str);
-                        } else {
-                            part = str.substring(1).split("\\s*;\\s*");
-                        }
-                        mes = str;
-                        run.process(part);
-                    }
+            long modified = file.lastModified();
+            FileInputStream in = new FileInputStream(file);
+            long filepointer;
+            try {
+                // in online mode an incomplete last line is left to the tailing thread
+                if (parallel) {
+                    filepointer = parallel_parser.parse(in.getChannel(), 0, online);
+                } else {
+                    filepointer = parser.parse(in.getChannel(), 0, online);
                 }
-                br.close();
-                this.loaded = true;
+            } finally {
+                in.close();
+            }
+            this.loaded = true;
+            // a log that grew while it was parsed would get an index that
+            // misses its end
+            if (index != null && file.length() == filepointer && file.lastModified() == modified) {
+                try {
+                    LogIndex.write(file, filepointer, modified, run, index);
+                } catch (IOException e) {
+                    // the index is only an optimization
+                }
+            }
+            if (online) {
+                // the tailing thread keeps changing the model, readers use its snapshots
+                run.flush();
+                tailer = new LogTailer(file, filepointer, run, run.getSymbolTable());
+                Thread thread = new Thread(tailer);
+                thread.setDaemon(true);
+                thread.start();
             }
 
         } catch (FileNotFoundException e) {
@@ -122,288 +163,151 @@ public class Reader {
         } catch (Exception e) {
             this.loaded = false;
             System.err.println("Error: Invalid log file format:");
-            System.err.println(mes);
-        }
-
-    }
-
-    public void ser(String f_name) {
-        try {
-
-            FileOutputStream fileOut = new FileOutputStream(f_name);
-            ObjectOutputStream out = new ObjectOutputStream(fileOut);
-            out.writeObject(this.run);
-            out.close();
-            fileOut.close();
-        } catch (Exception e) {
-            e.printStackTrace();
+            System.err.println(parallel ? parallel_parser.getLine() : parser.getLine());
         }
 
     }
 
-    public void save(String f_name) {
-        File theDir = new File("old_runs");
-        if (!theDir.exists()) {
-            theDir.mkdir();
+    /**
+     * Reads a snapshot, a binary log or a text log from a stream, e.g., of
+     * a compressed file. A log read from a stream is complete, so it is
+     * neither indexed nor followed.
+     */
+    private void readStream(InputStream stream) throws IOException {
+        InputStream in = new BufferedInputStream(stream, 1 << 16);
+        LogParser parser = new LogParser(run, run.getSymbolTable());
+        BinaryLogParser binary_parser = new BinaryLogParser(run, run.getSymbolTable());
+        if (relation != null && !online) {
+            RelationFilter filter = new RelationFilter(relation, run);
+            parser.setFilter(filter);
+            binary_parser.setFilter(filter);
         }
-
+        boolean binary = false;
         try {
-            File save_file;
-            save_file = new File("old_runs/" + f_name);
-            int i = 1;
-            while (save_file.exists()) {
-
-                save_file = new File("old_runs/" + f_name + i);
-                i++;
+            if (SnapshotFile.isSnapshot(in)) {
+                SnapshotFile.read(in, file.getPath(), run);
+            } else if (BinaryLogParser.isBinaryLog(in)) {
+                binary = true;
+                binary_parser.parse(in);
+            } else {
+                parser.parse(in, false);
             }
-            save_file.createNewFile();
-
-            FileWriter fw = new FileWriter(save_file.getAbsoluteFile());
-            BufferedWriter bw = new BufferedWriter(fw);
-            RandomAccessFile r = new RandomAccessFile(this.file, "r");
-
-            bw.write(this.file.getAbsolutePath() + " ");
-            Date dNow = new Date();
-            SimpleDateFormat ft = new SimpleDateFormat(
-                    "'created on' yyyy.MM.dd 'at' HH:mm:ss");
-            bw.write(ft.format(dNow));
-            bw.newLine();
-            bw.newLine();
-
-            String str = null;
-            while ((str = r.readLine()) != null) {
-                if (!str.isEmpty() && str.charAt(0) == '@') {
-                    bw.write(str);
-                    bw.newLine();
-                }
+            this.loaded = true;
+            if (online) {
+                run.flush();
             }
-            r.close();
-            bw.close();
-
-        } catch (IOException e) {
-            e.printStackTrace();
+        } catch (RuntimeException e) {
+            this.loaded = false;
+            System.err.println("Error: Invalid log file format:");
+            System.err.println(binary ? binary_parser.getLabel() : parser.getLine());
+        } finally {
+            in.close();
         }
     }
 
-    private String[] replace(String str) {
-        boolean ignore = false;
-        String temp1 = "";
-        if (str.contains("\'")) {
-
-            for (int i = 0; i < str.length(); i++) {
-                if (str.charAt(i) == '\'') {
-                    ignore = !ignore;
-                }
-                if (ignore && str.charAt(i) == ';') {
-                    temp1 += '\b';
-                } else {
-                    temp1 += str.charAt(i);
-                }
-            }
-        } else {
-            temp1 = str;
-        }
-        ignore = false;
-        String temp2 = "";
-        if (temp1.contains("\"")) {
-            for (int i = 0; i < temp1.length(); i++) {
-                if (temp1.charAt(i) == '\"') {
-                    ignore = !ignore;
-                }
-                if (ignore && temp1.charAt(i) == ';') {
-                    temp2 += '\t';
-                } else {
-                    temp2 += temp1.charAt(i);
-                }
-            }
-        } else {
-            temp2 = temp1;
-        }
-        String[] part = temp2.substring(1).split("\\s*;\\s*");
-        for (int i = 0; i < part.length; i++) {
-            part[i] = part[i].replace('\b', ';');
-            part[i] = part[i].replace('\t', ';');
+    /**
+     * Reads a binary log and keeps following it. The stream stays open, the
+     * tailing thread continues where the first read stopped.
+     */
+    private void followBinary() throws IOException {
+        // the top rows of a live run are kept up to date as it grows
+        run.enableRanking();
+        BinaryLogParser parser = new BinaryLogParser(run, run.getSymbolTable());
+        InputStream in = new FileInputStream(file);
+        try {
+            parser.parse(in, true);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        } catch (RuntimeException e) {
+            in.close();
+            this.loaded = false;
+            System.err.println("Error: Invalid log file format:");
+            System.err.println(parser.getLabel());
+            return;
         }
-        return part;
-    }
-
-    public void stopRead() {
-        R1.kill();
+        this.loaded = true;
+        run.flush();
+        tailer = new LogTailer(file, parser, in, run);
+        Thread thread = new Thread(tailer);
+        thread.setDaemon(true);
+        thread.start();
     }
 
-    public boolean isUpdated() {
-        return R1.isUpdated();
+    /**
+     * Sets the number of threads parsing the log file.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
     }
 
-    public void setUpdated() {
-        R1.setUpdated();
+    /**
+     * Only reads the events of the given relation from a log, for commands
+     * that are about a single relation. An index of the log is still used
+     * if there is one.
+     * 
+     * @param relation id or name of the relation
+     */
+    public void setRelation(String relation) {
+        this.relation = relation;
     }
 
-    public boolean isLoaded() {
-        return this.loaded;
-
+    /**
+     * Writes a binary snapshot of the run, which can be loaded like a log.
+     */
+    public void ser(String f_name) {
+        try {
+            SnapshotFile.write(this.run, new File(f_name), this.file.getAbsolutePath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
-}
-
-class RunnableThread implements Runnable {
-
-    private long filepointer;
-    private long prev_filepointer;
-    private String prev_line = "";
-    private File file;
-    private boolean running;
-    private boolean changed = false; // if update occurs before display
-    // acknowledgement
-    private volatile boolean updated = false; // if display reflects updated
-    // data model
-    private ProgramRun run;
-    private String[] test;
+    /**
+     * Stores a compressed snapshot of the run in the directory of previous
+     * runs.
+     */
+    public void save(String f_name) {
+        File theDir = new File("old_runs");
+        if (!theDir.exists()) {
+            theDir.mkdir();
+        }
 
-    RunnableThread(File file, long fp, ProgramRun run) {
-        this.file = file;
-        this.filepointer = fp;
-        this.prev_filepointer = fp;
-        running = true;
-        this.run = run;
-    }
+        File save_file;
+        save_file = new File("old_runs/" + f_name);
+        int i = 1;
+        while (save_file.exists()) {
 
-    @Override
-    public void run() {
+            save_file = new File("old_runs/" + f_name + i);
+            i++;
+        }
         try {
-            while (running) {
-                Thread.sleep(1000);
-                long len = file.length();
-                if (len < filepointer) {
-                    // Log must have been deleted.
-                    filepointer = len;
-                } else if (len > filepointer) {
-                    // File must have had something added to it!
-
-                    if (updated) {
-                        changed = true;
-                    } else {
-                        updated = true;
-                        changed = false;
-                    }
-                    RandomAccessFile raf = new RandomAccessFile(file, "r");
-                    if (filepointer != prev_filepointer) {
-                        raf.seek(prev_filepointer);
-                        if (raf.readLine().equals(prev_line)) {
-
-                        }
-                    }
-
-                    raf.seek(filepointer);
-                    String line = "";
-                    int c;
-
-                    while (true) {
-                        line = "";
-                        prev_filepointer = raf.getFilePointer();
-                        while (true) {
-                            if ((c = raf.read()) == -1) {
-                                break;
-                            } else if ((char) c == '\n') {
-                                break;
-                            } else {
-                                line += (char) c;
-                                continue;
-                            }
-                        }
-
-                        if (line.isEmpty() && c == -1) {
-                            filepointer = raf.getFilePointer();
-                            raf.close();
-                            break;
-                        } else if (line.isEmpty() && (char) c == '\n') {
-                            filepointer = prev_filepointer;
-                            break;
-                        } else if (!line.isEmpty() && (char) c != '\n') {
-                            filepointer = prev_filepointer;
-                            break;
-                        }
-                        if (!line.isEmpty() && line.charAt(0) == '@') {
-                            String[] part;
-                            if (line.contains("\'") || line.contains("\"")) {
-                                part = replace(line);
-                            } else {
-                                part = line.substring(1).split("\\s*;\\s*");
-                            }
-                            test = part;
-                            run.process(part);
-                        }
-
-                    }
-
-                }
-            }
-
-        } catch (Exception e) {
+            SnapshotFile.write(this.run, save_file, this.file.getAbsolutePath(), true);
+        } catch (IOException e) {
             e.printStackTrace();
-            for (String s : test) {
-                System.out.print(s + ", ");
-            }
-            System.out.print("\b\b  \n");
         }
     }
 
-    public void kill() {
-        this.running = false;
+    public void stopRead() {
+        if (tailer != null) {
+            tailer.kill();
+        }
     }
 
-    public boolean isUpdated() {
-        return this.updated;
+    /**
+     * Subscribes to the changes the tailing thread makes to the run. The
+     * listener receives the relations and rules that changed, coalesced to
+     * at most one batch per interval.
+     * 
+     * @param interval minimum time in ms between two deliveries
+     */
+    public ChangeNotifier.Subscription subscribe(ChangeListener listener, long interval) {
+        return run.subscribe(listener, interval);
     }
 
-    public void setUpdated() {
-        if (changed) {
-            this.updated = true;
-            this.changed = false;
-        } else {
-            this.updated = false;
-        }
-    }
-
-    private String[] replace(String str) {
-        boolean ignore = false;
-        String temp1 = "";
-        if (str.contains("\'")) {
+    public boolean isLoaded() {
+        return this.loaded;
 
-            for (int i = 0; i < str.length(); i++) {
-                if (str.charAt(i) == '\'') {
-                    ignore = !ignore;
-                }
-                if (ignore && str.charAt(i) == ';') {
-                    temp1 += '\b';
-                } else {
-                    temp1 += str.charAt(i);
-                }
-            }
-        } else {
-            temp1 = str;
-        }
-        ignore = false;
-        String temp2 = "";
-        if (temp1.contains("\"")) {
-            for (int i = 0; i < temp1.length(); i++) {
-                if (temp1.charAt(i) == '\"') {
-                    ignore = !ignore;
-                }
-                if (ignore && temp1.charAt(i) == ';') {
-                    temp2 += '\t';
-                } else {
-                    temp2 += temp1.charAt(i);
-                }
-            }
-        } else {
-            temp2 = temp1;
-        }
-        String[] part = temp2.substring(1).split("\\s*;\\s*");
-        for (int i = 0; i < part.length; i++) {
-            part[i] = part[i].replace('\b', ';');
-            part[i] = part[i].replace('\t', ';');
-        }
-        return part;
     }
+
 }
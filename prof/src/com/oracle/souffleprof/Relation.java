@@ -28,65 +28,196 @@
 
 package com.oracle.souffleprof;
 
-import java.io.Serializable;
+import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-public class Relation implements Serializable {
+public class Relation {
 
-    private static final long serialVersionUID = 2674759421227104137L;
-    private String name;
+    private SymbolTable symbols;
+    private int name;
     private double runtime = 0;
     private long prev_num_tuples = 0;
     private long num_tuples = 0;
     private String id;
-    private String locator;
+    private int locator = ProfileEvent.NONE;
     private int rul_id = 0;
     private int rec_id = 0;
+    /** Number of new tuples of all non-recursive rules */
+    private long rul_num_tuples = 0;
 
-    private List<Iteration> iterations;
-    private Map<String, Rule> ruleMap;
+    private IterationTable iterations;
+    private Map<Integer, Rule> ruleMap;
+    /** Ids of the recursive rules by the symbol of their clause text */
+    private Map<Integer, String> rec_ids;
 
     private boolean ready = true;
+    /** Whether this relation changed since the last snapshot */
+    private boolean modified = false;
 
-    public Relation(String name, String id) {
+    /**
+     * @param name symbol of the relation name
+     */
+    public Relation(SymbolTable symbols, int name, String id) {
+        this.symbols = symbols;
         this.name = name;
-        ruleMap = new HashMap<String, Rule>();
-        iterations = new ArrayList<Iteration>();
+        ruleMap = new HashMap<Integer, Rule>();
+        rec_ids = new HashMap<Integer, String>();
+        iterations = new IterationTable(symbols);
         this.id = id;
     }
 
     /**
-     * @param data
-     *            = [x-rul; rel_name; version; loc; rul_name; val] 
-     *            [x-rel; rel_name; loc; val]
+     * @return a copy of this relation that is not affected by later changes
+     */
+    public Relation copy() {
+        Relation rel = new Relation(symbols, name, id);
+        rel.runtime = runtime;
+        rel.prev_num_tuples = prev_num_tuples;
+        rel.num_tuples = num_tuples;
+        rel.locator = locator;
+        rel.rul_id = rul_id;
+        rel.rec_id = rec_id;
+        rel.rul_num_tuples = rul_num_tuples;
+        rel.ready = ready;
+        rel.iterations = iterations.copy();
+        for (Map.Entry<Integer, Rule> entry : ruleMap.entrySet()) {
+            rel.ruleMap.put(entry.getKey(), entry.getValue().copy());
+        }
+        rel.rec_ids.putAll(rec_ids);
+        return rel;
+    }
+
+    public void write(SnapshotFile.Output out) throws IOException {
+        out.putInt(name);
+        out.putString(id);
+        out.putDouble(runtime);
+        out.putLong(prev_num_tuples);
+        out.putLong(num_tuples);
+        out.putInt(locator);
+        out.putInt(rul_id);
+        out.putInt(rec_id);
+        out.putLong(rul_num_tuples);
+        out.putBoolean(ready);
+        out.putInt(ruleMap.size());
+        for (Rule rul : ruleMap.values()) {
+            rul.write(out);
+        }
+        out.putInt(rec_ids.size());
+        for (Map.Entry<Integer, String> entry : rec_ids.entrySet()) {
+            out.putInt(entry.getKey());
+            out.putString(entry.getValue());
+        }
+        iterations.write(out);
+    }
+
+    public static Relation read(SnapshotFile.Input in, SymbolTable symbols) {
+        Relation rel = new Relation(symbols, in.getInt(), in.getString());
+        rel.runtime = in.getDouble();
+        rel.prev_num_tuples = in.getLong();
+        rel.num_tuples = in.getLong();
+        rel.locator = in.getInt();
+        rel.rul_id = in.getInt();
+        rel.rec_id = in.getInt();
+        rel.rul_num_tuples = in.getLong();
+        rel.ready = in.getBoolean();
+        int n = in.getInt();
+        for (int i = 0; i < n; i++) {
+            Rule rul = Rule.read(in, symbols);
+            rel.ruleMap.put(rul.getNameSymbol(), rul);
+        }
+        n = in.getInt();
+        for (int i = 0; i < n; i++) {
+            int key = in.getInt();
+            rel.rec_ids.put(key, in.getString());
+        }
+        rel.iterations = IterationTable.read(in, symbols);
+        return rel;
+    }
+
+    /**
+     * Writes the totals shown in the relation table, but no rules or
+     * iterations.
      */
-    public void addIteration(String[] data) {
+    public void writeSummary(SnapshotFile.Output out) throws IOException {
+        out.putString(getName());
+        out.putString(id);
+        out.putDouble(runtime);
+        out.putLong(num_tuples);
+        out.putString(getLocator());
+        out.putLong(rul_num_tuples);
+        iterations.writeSummary(out);
+    }
+
+    /**
+     * @return a relation with the totals of a summary, but no rules or
+     *         iterations
+     */
+    public static Relation readSummary(SnapshotFile.Input in, SymbolTable symbols) {
+        Relation rel = new Relation(symbols, symbols.intern(in.getString()), in.getString());
+        rel.runtime = in.getDouble();
+        rel.num_tuples = in.getLong();
+        String locator = in.getString();
+        if (locator != null) {
+            rel.locator = symbols.intern(locator);
+        }
+        rel.rul_num_tuples = in.getLong();
+        rel.iterations = IterationTable.readSummary(in, symbols);
+        return rel;
+    }
+
+    /**
+     * @return whether the last iteration is complete, i.e., it was copied
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public boolean isModified() {
+        return modified;
+    }
 
-        Iteration iter;
-        if (ready || iterations.isEmpty()) {
-            iter = new Iteration();
-            iterations.add(iter);
+    public void setModified(boolean modified) {
+        this.modified = modified;
+    }
+
+    /**
+     * Adds an event of the recursive evaluation to the current iteration.
+     * A copy event completes the current iteration.
+     */
+    public void addIteration(ProfileEvent event) {
+
+        int iter;
+        if (ready || iterations.size() == 0) {
+            iter = iterations.add();
             ready = false;
         } else {
-            iter = iterations.get(iterations.size() - 1);
+            iter = iterations.size() - 1;
         }
 
-        if (data[0].contains("rule")) {
-            String temp = createRecID(data[4]);
-            iter.addRule(data, temp);
-
-        } else if (data[0].charAt(0) == 't' && data[0].contains("relation")) {
-            iter.setRuntime(Double.parseDouble(data[3]));
-            iter.setLocator(data[2]);
-            this.locator = (String) data[2];
-        } else if (data[0].charAt(0) == 'n' && data[0].contains("relation")) {
-            iter.setNum_tuples(Long.parseLong(data[3]));
-        } else if (data[0].charAt(0) == 'c' && data[0].contains("relation")) {
-            iter.setCopy_time(Double.parseDouble(data[3]));
+        switch (event.getKind()) {
+        case REC_RULE_TIME:
+        case REC_RULE_SIZE:
+            String temp = createRecID(event.getRule());
+            iterations.addRule(event, temp);
+            break;
+        case REC_RELATION_TIME:
+            iterations.setRuntime(iter, event.getTime());
+            iterations.setLocator(iter, event.getLocator());
+            this.locator = event.getLocator();
+            break;
+        case REC_RELATION_SIZE:
+            iterations.setNum_tuples(iter, event.getTuples());
+            break;
+        case REC_RELATION_COPY:
+            iterations.setCopy_time(iter, event.getTime());
             ready = true;
+            break;
+        default:
+            break;
         }
 
     }
@@ -94,23 +225,21 @@ public class Relation implements Serializable {
     /*
      * Adds non-recursive rule to this relation.
      */
-    public void addRule(String[] data) {
-        Rule rul;
-        if (!ruleMap.containsKey(data[3])) {
-            rul = new Rule(data[3], createID());
-            ruleMap.put(data[3], rul);
-        } else {
-            rul = ruleMap.get(data[3]);
+    public void addRule(ProfileEvent event) {
+        Rule rul = ruleMap.get(event.getRule());
+        if (rul == null) {
+            rul = new Rule(symbols, event.getRule(), createID());
+            ruleMap.put(event.getRule(), rul);
         }
 
-        if (data[0].charAt(0) == 't') {
-            // int len = data.length;
-            rul.setRuntime(Double.parseDouble(data[4]));
-            rul.setLocator(data[2]);
-        } else if (data[0].charAt(0) == 'n') {
-            assert rul != null;
-            rul.setNum_tuples(Long.parseLong(data[4]) - prev_num_tuples);
-            this.prev_num_tuples = Long.parseLong(data[4]);
+        if (event.getKind() == ProfileEvent.Kind.NONREC_RULE_TIME) {
+            rul.setRuntime(event.getTime());
+            rul.setLocator(event.getLocator());
+        } else if (event.getKind() == ProfileEvent.Kind.NONREC_RULE_SIZE) {
+            long tuples = event.getTuples() - prev_num_tuples;
+            rul_num_tuples += tuples - rul.getNum_tuples();
+            rul.setNum_tuples(tuples);
+            this.prev_num_tuples = event.getTuples();
         }
 
     }
@@ -120,16 +249,14 @@ public class Relation implements Serializable {
         return "N" + this.id.substring(1) + "." + rul_id;
     }
 
-    private String createRecID(String name) {
-        for (Iteration iter : iterations) {
-            for (RuleRecursive rul : iter.getRul_rec().values()) {
-                if (rul.getName().equals(name)) {
-                    return rul.getId();
-                }
-            }
+    private String createRecID(int name) {
+        String rec = rec_ids.get(name);
+        if (rec == null) {
+            this.rec_id++;
+            rec = "C" + this.id.substring(1) + "." + this.rec_id;
+            rec_ids.put(name, rec);
         }
-        this.rec_id++;
-        return "C" + this.id.substring(1) + "." + this.rec_id;
+        return rec;
     }
 
     public double getNonRecTime() {
@@ -137,40 +264,19 @@ public class Relation implements Serializable {
     }
 
     public double getRecTime() {
-        double result = 0;
-        for (Iteration iter : iterations) {
-            result += iter.getRuntime();
-        }
-        return result;
+        return iterations.getTotRuntime();
     }
 
     public double getCopyTime() {
-        double result = 0;
-        for (Iteration iter : iterations) {
-            result += iter.getCopy_time();
-        }
-        return result;
+        return iterations.getTotCopy_time();
     }
 
     public long getNum_tuplesRel() {
-        Long result = 0L;
-        for (Iteration iter : iterations) {
-            result += iter.getNum_tuples();
-        }
-        return this.num_tuples + result;
+        return this.num_tuples + iterations.getTotNum_tuples();
     }
 
     public long getNum_tuplesRul() {
-        Long result = 0L;
-        for (Rule rul : ruleMap.values()) {
-            result += rul.getNum_tuples();
-        }
-        for (Iteration iter : iterations) {
-            for (RuleRecursive rul : iter.getRul_rec().values()) {
-                result += rul.getNum_tuples();
-            }
-        }
-        return result;
+        return rul_num_tuples + iterations.getTotRule_tuples();
     }
 
     public Long getTotNum_tuples() {
@@ -178,13 +284,7 @@ public class Relation implements Serializable {
     }
 
     public Long getTotNumRec_tuples() {
-        Long result = 0L;
-        for (Iteration iter : iterations) {
-            for (RuleRecursive rul : iter.getRul_rec().values()) {
-                result += rul.getNum_tuples();
-            }
-        }
-        return result;
+        return iterations.getTotRule_tuples();
     }
 
     public void setRuntime(double runtime) {
@@ -198,31 +298,35 @@ public class Relation implements Serializable {
     @Override
     public String toString() {
         StringBuilder result = new StringBuilder();
-        result.append("{\n" + name + ":" + runtime + ";" + num_tuples
+        result.append("{\n" + getName() + ":" + runtime + ";" + num_tuples
                 + "\n\nonRecRules:\n");
         for (Rule rul : ruleMap.values()) {
             result.append(rul.toString());
         }
         result.append("\n\niterations:\n");
-        result.append(iterations.toString());
+        result.append(getIterations().toString());
         result.append("\n}");
         return result.toString();
     }
 
     public String getName() {
-        return this.name;
+        return symbols.resolve(name);
+    }
+
+    public int getNameSymbol() {
+        return name;
     }
 
     /**
      * @return the ruleMap
      */
-    public Map<String, Rule> getRuleMap() {
+    public Map<Integer, Rule> getRuleMap() {
         return this.ruleMap;
     }
 
     public List<RuleRecursive> getRuleRecList() {
         List<RuleRecursive> temp = new ArrayList<RuleRecursive>();
-        for (Iteration iter : iterations) {
+        for (Iteration iter : getIterations()) {
             for (RuleRecursive rul : iter.getRul_rec().values()) {
                 temp.add(rul);
             }
@@ -230,7 +334,37 @@ public class Relation implements Serializable {
         return temp;
     }
 
+    /**
+     * @return the iterations of this relation that are kept, as views on its
+     *         iteration table
+     */
     public List<Iteration> getIterations() {
+        final int first = iterations.first();
+        return new AbstractList<Iteration>() {
+            @Override
+            public Iteration get(int index) {
+                if (index < 0 || first + index >= iterations.size()) {
+                    throw new IndexOutOfBoundsException("Index: " + index);
+                }
+                return new Iteration(iterations, first + index);
+            }
+
+            @Override
+            public int size() {
+                return iterations.size() - first;
+            }
+        };
+    }
+
+    /**
+     * Keeps only the given number of most recent iterations, see
+     * {@link IterationTable#setWindow(int)}.
+     */
+    public void setWindow(int window) {
+        iterations.setWindow(window);
+    }
+
+    public IterationTable getIterationTable() {
         return iterations;
     }
 
@@ -239,10 +373,13 @@ public class Relation implements Serializable {
     }
 
     public String getLocator() {
-        return locator;
+        if (locator == ProfileEvent.NONE) {
+            return null;
+        }
+        return symbols.resolve(locator);
     }
 
-    public void setLocator(String locator) {
+    public void setLocator(int locator) {
         this.locator = locator;
     }
 
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.oracle.souffleprof;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Selects the lines of a profile log that belong to a single relation, so
+ * that a command about one relation does not build the model of all of them.
+ *
+ * The relation field of a line is compared byte by byte with the name of
+ * the relation before the line is tokenized. A relation given by its id is
+ * found by counting the relations in the order they first appear in the
+ * log, which is how the data model assigns ids. Once the relation has
+ * appeared, the run is told its id so that the relation and its rules keep
+ * the ids of a full run, and the remaining lines are only compared against
+ * its name.
+ */
+public class RelationFilter {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte[] STRATUM = LogTokenizer.ascii("stratum");
+
+    private ProgramRun run;
+    /** Name of the relation, null while only its id is known */
+    private byte[] name;
+    /** Id number of the relation, 0 until it has appeared */
+    private int number;
+    private boolean found = false;
+    /** Relations seen before the selected one, in order of appearance */
+    private SymbolTable seen = new SymbolTable();
+
+    /**
+     * @param relation id (R<n>) or name of the relation
+     */
+    public RelationFilter(String relation, ProgramRun run) {
+        this.run = run;
+        if (relation.matches("R[1-9][0-9]*")) {
+            this.number = Integer.parseInt(relation.substring(1));
+        } else {
+            this.name = relation.getBytes(UTF8);
+        }
+    }
+
+    /**
+     * @return whether the line stored in buf between start and end has to
+     *         be parsed, i.e., it is not an event of another relation
+     */
+    public boolean accept(ByteBuffer buf, int start, int end) {
+        // only events of relations and rules have a relation field
+        if (end - start < 3 || buf.get(start) != '@' || buf.get(start + 2) != '-') {
+            return true;
+        }
+        byte type = buf.get(start + 1);
+        if (type != 't' && type != 'n' && type != 'c') {
+            return true;
+        }
+        int p = start + 3;
+        while (p < end && buf.get(p) != ';') {
+            p++;
+        }
+        if (p == end || isStratum(buf, start + 3, p)) {
+            return true;
+        }
+        int field_start = p + 1;
+        while (field_start < end && isSpace(buf.get(field_start))) {
+            field_start++;
+        }
+        int field_end = field_start;
+        boolean single_quote = false;
+        boolean double_quote = false;
+        while (field_end < end) {
+            byte b = buf.get(field_end);
+            if (b == '\'') {
+                single_quote = !single_quote;
+            } else if (b == '"') {
+                double_quote = !double_quote;
+            } else if (b == ';' && !single_quote && !double_quote) {
+                break;
+            }
+            field_end++;
+        }
+        while (field_end > field_start && isSpace(buf.get(field_end - 1))) {
+            field_end--;
+        }
+
+        if (found) {
+            return matches(buf, field_start, field_end);
+        }
+        int count = seen.size();
+        int n = seen.intern(buf, field_start, field_end) + 1;
+        if (n <= count) {
+            // a relation that appeared before
+            return false;
+        }
+        if (name != null ? matches(buf, field_start, field_end) : n == number) {
+            found = true;
+            number = n;
+            name = seen.getBytes(n - 1);
+            seen = null;
+            run.setNextId(n);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the tag of a line is a stratum timer, which belongs to
+     *         no relation
+     */
+    private static boolean isStratum(ByteBuffer buf, int start, int end) {
+        if (end - start != STRATUM.length) {
+            return false;
+        }
+        for (int k = 0; k < STRATUM.length; k++) {
+            if (STRATUM[k] != buf.get(start + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(ByteBuffer buf, int start, int end) {
+        if (name.length != end - start) {
+            return false;
+        }
+        for (int k = 0; k < name.length; k++) {
+            if (name[k] != buf.get(start + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == 0x0B || b == '\f' || b == '\r';
+    }
+}
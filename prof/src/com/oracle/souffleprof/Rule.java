@@ -28,22 +28,53 @@
 
 package com.oracle.souffleprof;
 
-import java.io.Serializable;
+import java.io.IOException;
 
-public class Rule implements Serializable {
+public class Rule {
 
-    private static final long serialVersionUID = -2518455587078964434L;
-    protected String name;
+    protected SymbolTable symbols;
+    protected int name;
     protected double runtime = 0;
     protected long num_tuples = 0;
     protected String id;
-    protected String locator = "";
+    protected int locator = ProfileEvent.NONE;
 
-    public Rule(String name, String id) {
+    /**
+     * @param name symbol of the clause text
+     */
+    public Rule(SymbolTable symbols, int name, String id) {
+        this.symbols = symbols;
         this.name = name;
         this.id = id;
     }
 
+    /**
+     * @return a copy of this rule sharing the symbol table
+     */
+    public Rule copy() {
+        Rule rul = new Rule(symbols, name, id);
+        rul.runtime = runtime;
+        rul.num_tuples = num_tuples;
+        rul.locator = locator;
+        return rul;
+    }
+
+    public void write(SnapshotFile.Output out) throws IOException {
+        out.putInt(name);
+        out.putString(id);
+        out.putDouble(runtime);
+        out.putLong(num_tuples);
+        out.putInt(locator);
+    }
+
+    public static Rule read(SnapshotFile.Input in, SymbolTable symbols) {
+        Rule rul = new Rule(symbols, in.getInt(), in.getString());
+        rul.runtime = in.getDouble();
+        rul.num_tuples = in.getLong();
+        rul.locator = in.getInt();
+        return rul;
+    }
+
     public String getId() {
         return id;
     }
@@ -65,6 +96,10 @@ public class Rule implements Serializable {
     }
 
     public String getName() {
+        return symbols.resolve(name);
+    }
+
+    public int getNameSymbol() {
         return name;
     }
 
@@ -73,14 +108,21 @@ public class Rule implements Serializable {
     }
 
     public String getLocator() {
+        if (locator == ProfileEvent.NONE) {
+            return "";
+        }
+        return symbols.resolve(locator);
+    }
+
+    public int getLocatorSymbol() {
         return locator;
     }
 
-    public void setLocator(String locator) {
-        if (this.locator.isEmpty()) {
+    public void setLocator(int locator) {
+        if (this.locator == ProfileEvent.NONE) {
             this.locator = locator;
         } else {
-            this.locator += " " + locator;
+            this.locator = symbols.intern(getLocator() + " " + symbols.resolve(locator));
         }
 
     }
@@ -88,7 +130,7 @@ public class Rule implements Serializable {
     @Override
     public String toString() {
         StringBuilder result = new StringBuilder();
-        result.append("{" + name + ":");
+        result.append("{" + getName() + ":");
         result.append("[" + runtime + "," + num_tuples + "]");
         result.append("}");
         return result.toString();
@@ -28,15 +28,13 @@
 
 package com.oracle.souffleprof;
 
-import java.io.Serializable;
 
-public class RuleRecursive extends Rule implements Serializable {
+public class RuleRecursive extends Rule {
 
-    private static final long serialVersionUID = 5362512692249185464L;
     private int version;
 
-    public RuleRecursive(String name, int version, String id)  {
-        super(name, id);
+    public RuleRecursive(SymbolTable symbols, int name, int version, String id)  {
+        super(symbols, name, id);
         this.version = version;
     }
 
@@ -47,7 +45,7 @@ public class RuleRecursive extends Rule implements Serializable {
     @Override
     public String toString() {
         StringBuilder result = new StringBuilder();
-        result.append("{"+this.name+","+this.version+":");
+        result.append("{"+getName()+","+this.version+":");
         result.append(","+this.runtime+","+this.num_tuples+"}");
         return result.toString();
     }
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.oracle.souffleprof;
+
+import java.io.IOException;
+
+/**
+ * Profile Data Model
+ * 
+ * Measurements of one version of a recursive rule over all iterations of
+ * its relation, stored in primitive arrays indexed by iteration. In
+ * streaming mode the arrays are a ring over the window of iterations kept by
+ * the iteration table. Like the iteration table, the arrays are split into
+ * blocks that a copy shares.
+ */
+public class RuleSeries {
+
+    private SymbolTable symbols;
+    private int name;
+    private int locator;
+    private int version;
+    private String id;
+    /** Number of iterations kept, 0 to keep all */
+    private int window;
+
+    private BlockArray<Rows> rows = new BlockArray<Rows>(new Rows());
+    private double tot_runtime = 0;
+    private long tot_num_tuples = 0;
+    /** Number of iterations in which this version was evaluated */
+    private int count = 0;
+    /** Distribution of the runtime per iteration */
+    private QuantileSketch runtimes = new QuantileSketch();
+
+    /**
+     * The columns of a block of iterations.
+     */
+    private static final class Rows implements BlockArray.Block<Rows> {
+        final double[] runtime = new double[BlockArray.BLOCK_SIZE];
+        final long[] num_tuples = new long[BlockArray.BLOCK_SIZE];
+        /** Iteration number plus one of each slot, 0 if the slot is unused */
+        final int[] iterations = new int[BlockArray.BLOCK_SIZE];
+
+        @Override
+        public Rows copy() {
+            Rows rows = new Rows();
+            System.arraycopy(runtime, 0, rows.runtime, 0, BlockArray.BLOCK_SIZE);
+            System.arraycopy(num_tuples, 0, rows.num_tuples, 0, BlockArray.BLOCK_SIZE);
+            System.arraycopy(iterations, 0, rows.iterations, 0, BlockArray.BLOCK_SIZE);
+            return rows;
+        }
+    }
+
+    public RuleSeries(SymbolTable symbols, int name, int locator, int version, String id,
+            int window) {
+        this.symbols = symbols;
+        this.name = name;
+        this.locator = locator;
+        this.version = version;
+        this.id = id;
+        this.window = window;
+    }
+
+    /**
+     * @return a copy of this series that is not affected by later changes
+     */
+    public RuleSeries copy() {
+        RuleSeries rul = new RuleSeries(symbols, name, locator, version, id, window);
+        rul.rows = rows.copy();
+        rul.tot_runtime = tot_runtime;
+        rul.tot_num_tuples = tot_num_tuples;
+        rul.count = count;
+        rul.runtimes = runtimes.copy();
+        return rul;
+    }
+
+    public void write(SnapshotFile.Output out) throws IOException {
+        out.putInt(name);
+        out.putInt(locator);
+        out.putInt(version);
+        out.putString(id);
+        out.putInt(window);
+        out.putDouble(tot_runtime);
+        out.putLong(tot_num_tuples);
+        out.putInt(count);
+        runtimes.write(out);
+        int n = rows.length();
+        while (n > 0 && !used(n - 1)) {
+            n--;
+        }
+        double[] runtime = new double[n];
+        long[] num_tuples = new long[n];
+        int[] iterations = new int[n];
+        for (int i = 0; i < n; i++) {
+            Rows block = rows.get(i);
+            if (block != null) {
+                int j = BlockArray.offset(i);
+                runtime[i] = block.runtime[j];
+                num_tuples[i] = block.num_tuples[j];
+                iterations[i] = block.iterations[j];
+            }
+        }
+        out.putDoubles(runtime, n);
+        out.putLongs(num_tuples, n);
+        out.putInts(iterations, n);
+    }
+
+    public static RuleSeries read(SnapshotFile.Input in, SymbolTable symbols) {
+        RuleSeries rul = new RuleSeries(symbols, in.getInt(), in.getInt(), in.getInt(),
+                in.getString(), in.getInt());
+        rul.tot_runtime = in.getDouble();
+        rul.tot_num_tuples = in.getLong();
+        rul.count = in.getInt();
+        rul.runtimes = QuantileSketch.read(in);
+        double[] runtime = in.getDoubles(0);
+        long[] num_tuples = in.getLongs(0);
+        int[] iterations = in.getInts(0);
+        for (int i = 0; i < iterations.length; i++) {
+            if (iterations[i] != 0) {
+                Rows block = rul.rows.edit(i);
+                int j = BlockArray.offset(i);
+                block.runtime[j] = runtime[i];
+                block.num_tuples[j] = num_tuples[i];
+                block.iterations[j] = iterations[i];
+            }
+        }
+        return rul;
+    }
+
+    private int slot(int iteration) {
+        return window == 0 ? iteration : iteration % window;
+    }
+
+    /**
+     * Adds runtime of the given iteration.
+     */
+    public void addRuntime(int iteration, double time) {
+        int i = slot(iteration);
+        Rows block = rows.edit(i);
+        int j = BlockArray.offset(i);
+        tot_runtime += time;
+        if (block.iterations[j] == iteration + 1) {
+            runtimes.replace(block.runtime[j], block.runtime[j] + time);
+            block.runtime[j] += time;
+        } else {
+            block.runtime[j] = time;
+            block.num_tuples[j] = 0;
+            block.iterations[j] = iteration + 1;
+            count++;
+            runtimes.add(time);
+        }
+    }
+
+    public void setNum_tuples(int iteration, long tuples) {
+        int i = slot(iteration);
+        long[] num_tuples = rows.edit(i).num_tuples;
+        int j = BlockArray.offset(i);
+        tot_num_tuples += tuples - num_tuples[j];
+        num_tuples[j] = tuples;
+    }
+
+    /**
+     * @return whether a slot holds an iteration
+     */
+    private boolean used(int i) {
+        Rows block = rows.get(i);
+        return block != null && block.iterations[BlockArray.offset(i)] != 0;
+    }
+
+    /**
+     * @return whether this version was evaluated in the given iteration,
+     *         false if the iteration is no longer kept
+     */
+    public boolean has(int iteration) {
+        int i = slot(iteration);
+        Rows block = rows.get(i);
+        return block != null && block.iterations[BlockArray.offset(i)] == iteration + 1;
+    }
+
+    public double getRuntime(int iteration) {
+        int i = slot(iteration);
+        return has(iteration) ? rows.get(i).runtime[BlockArray.offset(i)] : 0;
+    }
+
+    public long getNum_tuples(int iteration) {
+        int i = slot(iteration);
+        return has(iteration) ? rows.get(i).num_tuples[BlockArray.offset(i)] : 0;
+    }
+
+    /**
+     * @return the distribution of the runtime of this version per iteration
+     */
+    public QuantileSketch getRuntimes() {
+        return runtimes;
+    }
+
+    /**
+     * @return the number of iterations in which this version was evaluated,
+     *         including those no longer kept
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public double getTotRuntime() {
+        return tot_runtime;
+    }
+
+    public long getTotNum_tuples() {
+        return tot_num_tuples;
+    }
+
+    /**
+     * @return the measurements of the given iteration as a rule object
+     */
+    public RuleRecursive get(int iteration) {
+        RuleRecursive rul = new RuleRecursive(symbols, name, version, id);
+        rul.setRuntime(getRuntime(iteration));
+        rul.setNum_tuples(getNum_tuples(iteration));
+        rul.setLocator(locator);
+        return rul;
+    }
+
+    public String getName() {
+        return symbols.resolve(name);
+    }
+
+    public int getNameSymbol() {
+        return name;
+    }
+
+    public String getLocator() {
+        return symbols.resolve(locator);
+    }
+
+    public int getLocatorSymbol() {
+        return locator;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getId() {
+        return id;
+    }
+}
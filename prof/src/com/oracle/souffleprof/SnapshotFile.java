@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.oracle.souffleprof;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Binary snapshot of an analyzed profile.
+ *
+ * A snapshot stores the symbol table and the data model of a program run,
+ * with the iteration data of recursive relations as primitive columns.
+ * It is written sequentially through a file channel and read back from a
+ * memory mapping, so reopening a profile does not parse the log again.
+ *
+ * The file starts with a magic number and a format version; a snapshot of
+ * another version is rejected. A snapshot may be stored gzip compressed,
+ * it is then decompressed into memory as a whole.
+ */
+public class SnapshotFile {
+
+    /** "SPRF" */
+    private static final int MAGIC = 0x53505246;
+
+    private static final int VERSION = 4;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * @return whether the file starts with the magic number of a snapshot
+     */
+    public static boolean isSnapshot(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer buf = ByteBuffer.allocate(4);
+            while (buf.hasRemaining() && channel.read(buf) > 0) {
+            }
+            return !buf.hasRemaining() && buf.getInt(0) == MAGIC;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return whether the stream starts with the magic number of a snapshot,
+     *         the stream is reset to its start
+     */
+    public static boolean isSnapshot(InputStream in) throws IOException {
+        in.mark(4);
+        try {
+            int magic = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = in.read();
+                if (b == -1) {
+                    return false;
+                }
+                magic = (magic << 8) | b;
+            }
+            return magic == MAGIC;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the run.
+     *
+     * @param source path of the log the run was read from
+     */
+    public static void write(ProgramRun run, File file, String source) throws IOException {
+        write(run, file, source, false);
+    }
+
+    /**
+     * Writes a snapshot of the run.
+     *
+     * @param source path of the log the run was read from
+     * @param compress whether the snapshot is gzip compressed
+     */
+    public static void write(ProgramRun run, File file, String source, boolean compress)
+            throws IOException {
+        if (compress) {
+            GZIPOutputStream gzip = new GZIPOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+            try {
+                write(run, Channels.newChannel(gzip), source);
+                gzip.finish();
+            } finally {
+                gzip.close();
+            }
+            return;
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            write(run, channel, source);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static void write(ProgramRun run, WritableByteChannel channel, String source)
+            throws IOException {
+        Output out = new Output(channel);
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putString(source);
+        out.putLong(System.currentTimeMillis());
+        // loading relations from the log interns their strings
+        run.loadAll();
+        run.getSymbolTable().write(out);
+        run.write(out);
+        out.flush();
+    }
+
+    /**
+     * Reads a snapshot into an empty run.
+     */
+    public static void read(File file, ProgramRun run) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large: " + file);
+            }
+            read(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), file.getPath(), run);
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads a snapshot from a stream, e.g., a decompressed file, into an
+     * empty run.
+     *
+     * @param name name of the snapshot for error messages
+     */
+    public static void read(InputStream in, String name, ProgramRun run) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] block = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(block)) != -1) {
+            data.write(block, 0, n);
+        }
+        read(ByteBuffer.wrap(data.toByteArray()), name, run);
+    }
+
+    private static void read(ByteBuffer buf, String name, ProgramRun run) throws IOException {
+        try {
+            Input in = new Input(buf);
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a profile snapshot: " + name);
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + name);
+            }
+            in.getString(); // source
+            in.getLong(); // creation time
+            run.getSymbolTable().read(in);
+            run.read(in);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot: " + name);
+        }
+    }
+
+    /**
+     * Buffered sequential output to a channel.
+     */
+    public static class Output {
+
+        private WritableByteChannel channel;
+        private ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        public Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensure(int n) throws IOException {
+            if (buf.remaining() < n) {
+                flush();
+            }
+        }
+
+        public void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            buf.clear();
+        }
+
+        public void putInt(int value) throws IOException {
+            ensure(4);
+            buf.putInt(value);
+        }
+
+        public void putLong(long value) throws IOException {
+            ensure(8);
+            buf.putLong(value);
+        }
+
+        public void putDouble(double value) throws IOException {
+            ensure(8);
+            buf.putDouble(value);
+        }
+
+        public void putBoolean(boolean value) throws IOException {
+            ensure(1);
+            buf.put((byte) (value ? 1 : 0));
+        }
+
+        public void putBytes(byte[] data) throws IOException {
+            putInt(data.length);
+            int offset = 0;
+            while (offset < data.length) {
+                ensure(1);
+                int n = Math.min(buf.remaining(), data.length - offset);
+                buf.put(data, offset, n);
+                offset += n;
+            }
+        }
+
+        /**
+         * Writes a string, null is written as length -1.
+         */
+        public void putString(String str) throws IOException {
+            if (str == null) {
+                putInt(-1);
+            } else {
+                putBytes(str.getBytes(UTF8));
+            }
+        }
+
+        public void putInts(int[] values, int n) throws IOException {
+            putInt(n);
+            for (int i = 0; i < n; i++) {
+                putInt(values[i]);
+            }
+        }
+
+        public void putLongs(long[] values, int n) throws IOException {
+            putInt(n);
+            for (int i = 0; i < n; i++) {
+                putLong(values[i]);
+            }
+        }
+
+        public void putDoubles(double[] values, int n) throws IOException {
+            putInt(n);
+            for (int i = 0; i < n; i++) {
+                putDouble(values[i]);
+            }
+        }
+    }
+
+    /**
+     * Sequential input from a buffer. Arrays are read in bulk.
+     */
+    public static class Input {
+
+        private ByteBuffer buf;
+
+        public Input(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        public int getInt() {
+            return buf.getInt();
+        }
+
+        public long getLong() {
+            return buf.getLong();
+        }
+
+        public double getDouble() {
+            return buf.getDouble();
+        }
+
+        public boolean getBoolean() {
+            return buf.get() != 0;
+        }
+
+        public byte[] getBytes() {
+            byte[] data = new byte[buf.getInt()];
+            buf.get(data);
+            return data;
+        }
+
+        public String getString() {
+            int len = buf.getInt();
+            if (len < 0) {
+                return null;
+            }
+            byte[] data = new byte[len];
+            buf.get(data);
+            return new String(data, UTF8);
+        }
+
+        /**
+         * @return the array, with at least the given capacity
+         */
+        public int[] getInts(int capacity) {
+            int n = buf.getInt();
+            int[] values = new int[Math.max(n, capacity)];
+            buf.asIntBuffer().get(values, 0, n);
+            buf.position(buf.position() + 4 * n);
+            return values;
+        }
+
+        public long[] getLongs(int capacity) {
+            int n = buf.getInt();
+            long[] values = new long[Math.max(n, capacity)];
+            buf.asLongBuffer().get(values, 0, n);
+            buf.position(buf.position() + 8 * n);
+            return values;
+        }
+
+        public double[] getDoubles(int capacity) {
+            int n = buf.getInt();
+            double[] values = new double[Math.max(n, capacity)];
+            buf.asDoubleBuffer().get(values, 0, n);
+            buf.position(buf.position() + 8 * n);
+            return values;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.oracle.souffleprof;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Profile Data Model
+ *
+ * The rows of a table with the permutations that sort them, computed once for
+ * each sort column and direction. The rows are never changed; a table is
+ * replaced when the model it was built from changes.
+ */
+public class SortedTable {
+
+    private final DataRow[] rows;
+    /** Permutations of the rows by sort key */
+    private final Map<Integer, int[]> orders = new HashMap<Integer, int[]>();
+
+    public SortedTable(DataRow[] rows) {
+        this.rows = rows;
+    }
+
+    public DataRow[] getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the rows in the order of a comparator. The order is only
+     * computed the first time a key is used.
+     *
+     * @param key sort column and direction the order is cached under
+     * @return a new array of the rows in order
+     */
+    public DataRow[] sorted(int key, final Comparator<DataRow> order) {
+        int[] permutation = orders.get(key);
+        if (permutation == null) {
+            Integer[] index = new Integer[rows.length];
+            for (int i = 0; i < index.length; i++) {
+                index[i] = i;
+            }
+            Arrays.sort(index, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return order.compare(rows[a], rows[b]);
+                }
+            });
+            permutation = new int[index.length];
+            for (int i = 0; i < index.length; i++) {
+                permutation[i] = index[i];
+            }
+            orders.put(key, permutation);
+        }
+        DataRow[] result = new DataRow[rows.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = rows[permutation[i]];
+        }
+        return result;
+    }
+}
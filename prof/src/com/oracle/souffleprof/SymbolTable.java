@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.oracle.souffleprof;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Interns the strings of a profile log, i.e., relation names, source
+ * locators and clause texts.
+ *
+ * Each distinct string is stored once and identified by a dense integer
+ * id. Strings are looked up by their UTF-8 bytes, so interning a string
+ * that is already known does not allocate.
+ */
+public class SymbolTable {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private int size = 0;
+    /**
+     * Volatile so that a reader thread resolving ids of a published snapshot
+     * sees the contents of a grown array.
+     */
+    private volatile String[] strings = new String[64];
+    private byte[][] bytes = new byte[64][];
+    private int[] hashes = new int[64];
+
+    /** Open addressing hash table of ids + 1, 0 marks a free slot */
+    private int[] table = new int[128];
+
+    /**
+     * @return the id of the string encoded in buf between start and end
+     */
+    public int intern(ByteBuffer buf, int start, int end) {
+        int h = hash(buf, start, end);
+        int mask = table.length - 1;
+        int slot = h & mask;
+        while (table[slot] != 0) {
+            int id = table[slot] - 1;
+            if (hashes[id] == h && matches(bytes[id], buf, start, end)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        byte[] data = new byte[end - start];
+        for (int k = 0; k < data.length; k++) {
+            data[k] = buf.get(start + k);
+        }
+        return add(data, new String(data, UTF8), h, slot);
+    }
+
+    /**
+     * @return the id of the given string
+     */
+    public int intern(String str) {
+        byte[] data = str.getBytes(UTF8);
+        return intern(ByteBuffer.wrap(data), 0, data.length);
+    }
+
+    private int add(byte[] data, String str, int h, int slot) {
+        String[] current = strings;
+        if (size == current.length) {
+            int capacity = size * 2;
+            bytes = Arrays.copyOf(bytes, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            current = Arrays.copyOf(current, capacity);
+            strings = current;
+        }
+        int id = size++;
+        current[id] = str;
+        bytes[id] = data;
+        hashes[id] = h;
+        table[slot] = id + 1;
+        if (2 * size > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        int[] new_table = new int[table.length * 2];
+        int mask = new_table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (new_table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            new_table[slot] = id + 1;
+        }
+        table = new_table;
+    }
+
+    private static int hash(ByteBuffer buf, int start, int end) {
+        int h = 0;
+        for (int p = start; p < end; p++) {
+            h = 31 * h + buf.get(p);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(byte[] data, ByteBuffer buf, int start, int end) {
+        if (data.length != end - start) {
+            return false;
+        }
+        for (int k = 0; k < data.length; k++) {
+            if (data[k] != buf.get(start + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the string with the given id
+     */
+    public String resolve(int id) {
+        return strings[id];
+    }
+
+    /**
+     * @return the UTF-8 encoding of the string with the given id
+     */
+    public byte[] getBytes(int id) {
+        return bytes[id];
+    }
+
+    /**
+     * Writes the strings in the order of their ids.
+     */
+    public void write(SnapshotFile.Output out) throws IOException {
+        out.putInt(size);
+        for (int id = 0; id < size; id++) {
+            out.putBytes(bytes[id]);
+        }
+    }
+
+    /**
+     * Reads the strings of a snapshot into this empty table, so that they
+     * keep their ids.
+     */
+    public void read(SnapshotFile.Input in) throws IOException {
+        int n = in.getInt();
+        for (int i = 0; i < n; i++) {
+            byte[] data = in.getBytes();
+            if (intern(ByteBuffer.wrap(data), 0, data.length) != i) {
+                throw new IOException("Duplicate string in snapshot");
+            }
+        }
+    }
+
+    /**
+     * @return the number of distinct strings
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2015, Oracle and/or its affiliates. All Rights reserved
+ * 
+ * The Universal Permissive License (UPL), Version 1.0
+ * 
+ * Subject to the condition set forth below, permission is hereby granted to any person obtaining a copy of this software,
+ * associated documentation and/or data (collectively the "Software"), free of charge and under any and all copyright rights in the 
+ * Software, and any and all patent rights owned or freely licensable by each licensor hereunder covering either (i) the unmodified 
+ * Software as contributed to or provided by such licensor, or (ii) the Larger Works (as defined below), to deal in both
+ * 
+ * (a) the Software, and
+ * (b) any piece of software and/or hardware listed in the lrgrwrks.txt file if one is included with the Software (each a “Larger
+ * Work” to which the Software is contributed by such licensors),
+ * 
+ * without restriction, including without limitation the rights to copy, create derivative works of, display, perform, and 
+ * distribute the Software and make, use, sell, offer for sale, import, export, have made, and have sold the Software and the 
+ * Larger Work(s), and to sublicense the foregoing rights on either these or other terms.
+ * 
+ * This license is subject to the following condition:
+ * The above copyright notice and either this complete permission notice or at a minimum a reference to the UPL must be included in 
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.oracle.souffleprof;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Profile Data Model
+ *
+ * When relations and strata were evaluated, as intervals in seconds on the
+ * steady clock of the program. A relation has an interval for its
+ * evaluation if it is not recursive, and otherwise one for each iteration
+ * and each copy of its new tuples.
+ *
+ * Intervals are stored in primitive columns and only appended, so a
+ * snapshot shares the columns of the live timeline and merely remembers
+ * how many intervals it covers.
+ *
+ * The number of intervals can be bounded for streaming mode: once the limit
+ * is reached, intervals of the same key that are less than a resolution
+ * apart are merged into new columns, doubling the resolution until at most
+ * half of the limit is left.
+ */
+public class Timeline {
+
+    /** Intervals of relations, keyed by the symbol of the relation name */
+    private Intervals relations = new Intervals();
+    /** Intervals of strata, keyed by the index of the stratum */
+    private Intervals strata = new Intervals();
+
+    /**
+     * @return a copy of this timeline that is not affected by later changes
+     */
+    public Timeline copy() {
+        Timeline copy = new Timeline();
+        copy.relations = relations.copy();
+        copy.strata = strata.copy();
+        return copy;
+    }
+
+    /**
+     * Bounds the number of intervals of relations and of strata each.
+     * 
+     * @param limit maximal number of intervals, 0 for no limit
+     */
+    public void setLimit(int limit) {
+        relations.limit = limit;
+        strata.limit = limit;
+    }
+
+    public void addRelation(int name, double start, double end) {
+        relations.add(name, start, end);
+    }
+
+    public void addStratum(int index, double start, double end) {
+        strata.add(index, start, end);
+    }
+
+    public Intervals getRelations() {
+        return relations;
+    }
+
+    public Intervals getStrata() {
+        return strata;
+    }
+
+    public boolean isEmpty() {
+        return relations.size() == 0 && strata.size() == 0;
+    }
+
+    /**
+     * @return the end of the last interval
+     */
+    public double getEnd() {
+        return Math.max(relations.getEnd(), strata.getEnd());
+    }
+
+    /**
+     * Writes the timeline. The names of the relations are written as well,
+     * since the symbols of a reader may differ.
+     */
+    public void write(SnapshotFile.Output out, SymbolTable symbols) throws IOException {
+        Map<Integer, Integer> names = new LinkedHashMap<Integer, Integer>();
+        int[] keys = new int[relations.size];
+        for (int i = 0; i < relations.size; i++) {
+            Integer key = names.get(relations.keys[i]);
+            if (key == null) {
+                key = names.size();
+                names.put(relations.keys[i], key);
+            }
+            keys[i] = key;
+        }
+        out.putInt(names.size());
+        for (int name : names.keySet()) {
+            out.putString(symbols.resolve(name));
+        }
+        Intervals renamed = relations.copy();
+        renamed.keys = keys;
+        renamed.write(out);
+        strata.write(out);
+    }
+
+    public static Timeline read(SnapshotFile.Input in, SymbolTable symbols) {
+        int[] names = new int[in.getInt()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = symbols.intern(in.getString());
+        }
+        Timeline timeline = new Timeline();
+        timeline.relations = Intervals.read(in);
+        for (int i = 0; i < timeline.relations.size; i++) {
+            timeline.relations.keys[i] = names[timeline.relations.keys[i]];
+        }
+        timeline.strata = Intervals.read(in);
+        return timeline;
+    }
+
+    /**
+     * Intervals with the key of the relation or stratum they belong to, in
+     * the order they were logged.
+     */
+    public static class Intervals {
+
+        private int size = 0;
+        private int[] keys = new int[16];
+        private double[] starts = new double[16];
+        private double[] ends = new double[16];
+        private double end = 0;
+        /** Maximal number of intervals, 0 for no limit */
+        private int limit = 0;
+        /** Gap below which intervals of a key have been merged */
+        private double resolution = 0;
+
+        private void add(int key, double start, double end) {
+            if (limit > 0 && size >= limit) {
+                compact();
+            }
+            if (size == keys.length) {
+                int capacity = 2 * size;
+                keys = Arrays.copyOf(keys, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+            }
+            keys[size] = key;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+            this.end = Math.max(this.end, end);
+        }
+
+        /**
+         * Merges intervals of the same key into new columns, which leaves the
+         * columns shared with snapshots untouched.
+         */
+        private void compact() {
+            Map<Integer, Integer> last = new HashMap<Integer, Integer>();
+            int[] new_keys = new int[keys.length];
+            double[] new_starts = new double[keys.length];
+            double[] new_ends = new double[keys.length];
+            int n;
+            do {
+                resolution = resolution > 0 ? 2 * resolution : Math.max(end, 1e-9) / (limit / 2);
+                last.clear();
+                n = 0;
+                for (int i = 0; i < size; i++) {
+                    Integer j = last.get(keys[i]);
+                    if (j != null && starts[i] - new_ends[j] <= resolution) {
+                        new_starts[j] = Math.min(new_starts[j], starts[i]);
+                        new_ends[j] = Math.max(new_ends[j], ends[i]);
+                    } else {
+                        last.put(keys[i], n);
+                        new_keys[n] = keys[i];
+                        new_starts[n] = starts[i];
+                        new_ends[n] = ends[i];
+                        n++;
+                    }
+                }
+            } while (n > limit / 2 && resolution < end);
+            if (n > limit / 2) {
+                // more keys than half of the limit, which cannot be merged
+                limit = 2 * n;
+            }
+            keys = new_keys;
+            starts = new_starts;
+            ends = new_ends;
+            size = n;
+        }
+
+        private Intervals copy() {
+            Intervals copy = new Intervals();
+            // intervals below size are never changed
+            copy.size = size;
+            copy.keys = keys;
+            copy.starts = starts;
+            copy.ends = ends;
+            copy.end = end;
+            return copy;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int getKey(int i) {
+            return keys[i];
+        }
+
+        public double getStart(int i) {
+            return starts[i];
+        }
+
+        public double getEnd(int i) {
+            return ends[i];
+        }
+
+        /**
+         * @return the end of the last interval
+         */
+        public double getEnd() {
+            return end;
+        }
+
+        private void write(SnapshotFile.Output out) throws IOException {
+            out.putInt(size);
+            out.putInts(keys, size);
+            out.putDoubles(starts, size);
+            out.putDoubles(ends, size);
+        }
+
+        private static Intervals read(SnapshotFile.Input in) {
+            Intervals intervals = new Intervals();
+            intervals.size = in.getInt();
+            intervals.keys = in.getInts(16);
+            intervals.starts = in.getDoubles(16);
+            intervals.ends = in.getDoubles(16);
+            for (int i = 0; i < intervals.size; i++) {
+                intervals.end = Math.max(intervals.end, intervals.ends[i]);
+            }
+            return intervals;
+        }
+    }
+}
@@ -6,7 +6,10 @@ package com.oracle.souffleprof;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author ramod
@@ -18,25 +21,80 @@ public class Tui {
     private boolean loaded;
     private String f_name;
     private Reader live_reader;
+    /** Model the live reader inserts into, run is its latest snapshot */
+    private ProgramRun live_run;
+    /** Tables of the live run, rebuilt from the relations that changed */
+    private LiveTables live_tables;
+    /** Changes of the live run not shown yet, delivered by the notifier */
+    private ChangeBatch changes;
+    private ChangeNotifier.Subscription subscription;
     private boolean alive = false;
     private int sort_col = 0;
     private int precision = -1;
-    private Object[][] rel_table_state;
-    private Object[][] rul_table_state;
+    private DataRow[] rel_table_state;
+    private DataRow[] rul_table_state;
+    /** Tables with their sorted orders, valid for the version of the run */
+    private Map<String, SortedTable> tables = new HashMap<String, SortedTable>();
     private int sortDir = 1;
+    private int threads = 1;
+    /** Number of iterations kept per relation, 0 to keep all */
+    private int window = 0;
+    /** Columns of the quantiles of the runtime per iteration */
+    private static final String QUANTILE_HEADER = String.format("%8s%8s%8s%8s",
+            "P50_T", "P90_T", "P99_T", "MAX_T");
+    /** Minimum time in ms between two batches of changes of a live run */
+    private static final long REFRESH_INTERVAL = 100;
+    /** Number of columns of the bars of the timeline */
+    private static final int TIMELINE_WIDTH = 64;
 
     public Tui(String f_name, boolean live) {
+        this(f_name, live, 1);
+    }
+
+    /**
+     * @param threads number of threads parsing the log file
+     */
+    public Tui(String f_name, boolean live, int threads) {
+        this(f_name, live, threads, null);
+    }
+
+    /**
+     * @param relation id or name of the only relation to read, or null to
+     *        read all relations
+     */
+    public Tui(String f_name, boolean live, int threads, String relation) {
+        this(f_name, live, threads, relation, 0);
+    }
+
+    /**
+     * @param window number of iterations kept per relation in streaming
+     *        mode, or 0 to keep all iterations
+     */
+    public Tui(String f_name, boolean live, int threads, String relation, int window) {
         this.run = new ProgramRun();
+        this.run.setWindow(window);
+        this.threads = threads;
+        this.window = window;
         Reader reader = new Reader(f_name, this.run, false, live);
+        reader.setThreads(threads);
+        reader.setRelation(relation);
         reader.readFile();
-        if (live) {
+        if (live && reader.isLoaded()) {
             this.live_reader = reader;
+            this.live_run = run;
+            // no change is missed if the first snapshot is taken afterwards
+            this.subscription = reader.subscribe(new ChangeListener() {
+                public void changed(ChangeBatch batch) {
+                    addChanges(batch);
+                }
+            }, REFRESH_INTERVAL);
+            this.run = live_run.getSnapshot();
+            this.live_tables = new LiveTables(run);
         }
         this.loaded = reader.isLoaded();
         this.f_name = f_name;
         this.alive = live;
-        rul_table_state = run.getRulTable();
-        rel_table_state = run.getRelTable();
+        reset();
     }
 
     public void runCommand(String[] c) {
@@ -44,10 +102,17 @@ public class Tui {
             System.out.println("Error: File cannot be loaded");
             return;
         }
+        refresh();
         if (c[0].equals("top")) {
             top();
+        } else if (c[0].equals("timeline")) {
+            timeline();
+        } else if (c[0].equals("eta")) {
+            eta();
         } else if (c[0].equals("rel")) {
-            if (c.length == 2) {
+            if (c.length == 3 && c[1].equals("top") && c[2].matches("[0-9]+")) {
+                relTop(Integer.parseInt(c[2]));
+            } else if (c.length == 2) {
                 relRul(c[1]);
             } else if (c.length == 1) {
                 rel(c[0]);
@@ -57,7 +122,9 @@ public class Tui {
             }
         } else if (c[0].equals("rul")) {
             if (c.length > 1) {
-                if (c.length == 3 && c[1].equals("id")) {
+                if (c.length == 3 && c[1].equals("top") && c[2].matches("[0-9]+")) {
+                    rulTop(Integer.parseInt(c[2]));
+                } else if (c.length == 3 && c[1].equals("id")) {
                     System.out.print(String.format("%7s%2s%-25s\n\n", "ID", "", "NAME"));
                     id(c[2]);
                 } else if (c.length == 2 && c[1].equals("id")) {
@@ -146,10 +213,10 @@ public class Tui {
                     save(c[1]);
                 }
             } else if (c[0].equals("sort")) {
-                if (c.length == 2 && Integer.parseInt(c[1]) < 7) {
+                if (c.length == 2 && Integer.parseInt(c[1]) < 11) {
                     sort_col = Integer.parseInt(c[1]);
                 } else {
-                    System.out.println("Invalid column, please select a number between 0 and 6.");
+                    System.out.println("Invalid column, please select a number between 0 and 10.");
                 }
             } else {
                 runCommand(c);
@@ -157,6 +224,46 @@ public class Tui {
         }
     }
 
+    private synchronized void addChanges(ChangeBatch batch) {
+        if (changes == null) {
+            changes = batch;
+        } else {
+            changes.merge(batch);
+        }
+    }
+
+    private synchronized ChangeBatch takeChanges() {
+        ChangeBatch batch = changes;
+        changes = null;
+        return batch;
+    }
+
+    /**
+     * Switches to the snapshot of the changes delivered for a live run and
+     * rebuilds the rows of the relations that changed.
+     */
+    private void refresh() {
+        if (live_run == null) {
+            return;
+        }
+        ChangeBatch batch = takeChanges();
+        // the first snapshot may already contain the first changes
+        if (batch != null && batch.getSnapshot().getVersion() > run.getVersion()) {
+            live_tables.update(batch);
+            this.run = batch.getSnapshot();
+            reset();
+        }
+    }
+
+    /**
+     * Drops the tables of the previous model.
+     */
+    private void reset() {
+        tables.clear();
+        rul_table_state = null;
+        rel_table_state = live_tables != null ? live_tables.getRelTable() : run.getRelTable();
+    }
+
     private void loadMenu() {
         System.out.println("Please 'load' a file or 'open' from Previous Runs.");
         System.out.println("Previous Runs:");
@@ -171,6 +278,20 @@ public class Tui {
         }
     }
 
+    /**
+     * Shows the full-screen dashboard of a live run instead of the prompt.
+     * 
+     * @param interval minimum time in ms between two frames
+     */
+    public void runDashboard(long interval) {
+        if (!loaded || live_run == null) {
+            System.out.println("Error: File cannot be loaded");
+            return;
+        }
+        new Dashboard(live_reader, live_run.getSnapshot(), f_name, interval, precision).run();
+        quit();
+    }
+
     public void quit() {
         if (alive && loaded) {
             live_reader.stopRead();
@@ -189,11 +310,13 @@ public class Tui {
 
     private void load(String method, String load_file) {
         ProgramRun new_run = new ProgramRun();
+        new_run.setWindow(window);
         String f_name = load_file;
         if (method.equals("open")) {
             f_name = "old_runs/" + f_name;
         }
         Reader loader = new Reader(f_name, new_run, false, false);
+        loader.setThreads(threads);
         loader.readFile();
         if (loader.isLoaded()) {
             System.out.println("Load success");
@@ -204,6 +327,13 @@ public class Tui {
                 live_reader.stopRead();
                 this.alive = false;
             }
+            if (subscription != null) {
+                subscription.cancel();
+                subscription = null;
+            }
+            this.live_run = null;
+            this.live_tables = null;
+            reset();
             top();
         } else {
             System.out.println("Error: File not found");
@@ -216,8 +346,12 @@ public class Tui {
                 "display relation table.")));
         System.out.print((String.format("  %-30s%-5s %-10s\n", "rel <relation id>",
                 "-", "display all rules of given relation.")));
+        System.out.print((String.format("  %-30s%-5s %-10s\n", "rel top <n>",
+                "-", "display the n relations of the current order.")));
         System.out.print((String.format("  %-30s%-5s %-10s\n", "rul", "-",
                 "display rule table")));
+        System.out.print((String.format("  %-30s%-5s %-10s\n", "rul top <n>",
+                "-", "display the n rules of the current order.")));
         System.out.print((String.format("  %-30s%-5s %-10s\n", "rul <rule id>", "-",
                 "display all version of given rule.")));
         System.out.print((String.format("  %-30s%-5s %-10s\n", "rul id", "-",
@@ -235,6 +369,10 @@ public class Tui {
                 "graph the rule versions (C rules only) by type(tot_t/tuples).")));
         System.out.print((String.format("  %-30s%-5s %-10s\n", "top", "-",
                 "display top-level summary of program run.")));
+        System.out.print((String.format("  %-30s%-5s %-10s\n", "timeline", "-",
+                "display relation and stratum activity over time.")));
+        System.out.print((String.format("  %-30s%-5s %-10s\n", "eta", "-",
+                "estimate the fixpoint of the running recursive stratum.")));
         System.out.print((String.format("  %-30s%-5s %-10s\n", "help", "-",
                 "print this.")));
 
@@ -255,197 +393,434 @@ public class Tui {
                 "exit program.")));
     }
 
+    /**
+     * Prints the forecast of the fixpoint of the recursive stratum being
+     * evaluated.
+     */
+    private void eta() {
+        System.out.print("  ----- Convergence -----\n");
+        Convergence convergence = Convergence.analyze(run);
+        if (convergence == null) {
+            System.out.println(" No recursive stratum is being evaluated.");
+            return;
+        }
+        StringBuilder relations = new StringBuilder();
+        for (String name : convergence.getRelations()) {
+            relations.append(relations.length() > 0 ? ", " : "").append(name);
+        }
+        System.out.println(" Stratum: " + relations);
+        System.out.println(String.format(" Iterations: %d   Last delta: %s   Decay: %s   Fit: %s",
+                convergence.getIterations(), run.formatNum(precision, convergence.getDelta()),
+                formatRatio(convergence.getDecay()), formatRatio(convergence.getFit())));
+        if (convergence.getRemaining() < 0) {
+            System.out.println(" The delta is not shrinking, no estimate.");
+        } else {
+            System.out.println(String.format(" Remaining iterations: %d   Time to fixpoint: %s",
+                    convergence.getRemaining(), run.formatTime(convergence.getRemainingTime())));
+        }
+    }
+
+    private static String formatRatio(double ratio) {
+        return Double.isNaN(ratio) ? "-" : String.format("%.3f", ratio);
+    }
+
     private void top() {
         System.out.println("\n Total runtime: " + run.getRuntime());
         System.out.println("\n Total number of new tuples: " + run.formatNum(precision, run.getTotNumTuples()));
     }
 
     /**
-     rul table :
-     ROW[0] = TOT_T
-     ROW[1] = NREC_T
-     ROW[2] = REC_T
-     ROW[3] = COPY_T
-     ROW[4] = TUPLES
-     ROW[5] = REL NAME
-     ROW[6] = ID
+     * Displays when each stratum and relation was evaluated, as bars over
+     * the runtime of the program. A bucket of a bar is marked with '#' if
+     * it is covered at least half, and with '-' if it is covered partly.
      */
-    private void rel(String c) {
+    private void timeline() {
+        final Timeline timeline = run.getTimeline();
+        if (timeline.isEmpty()) {
+            System.out.println("No start and end times in the log.");
+            return;
+        }
+        double end = timeline.getEnd();
+        double width = end > 0 ? end / TIMELINE_WIDTH : 1;
+
+        System.out.print(String.format("\n%6s |%s| %s\n", "ID",
+                center("0 - " + formatTime(end) + "s", TIMELINE_WIDTH), "NAME"));
+
+        Timeline.Intervals strata = timeline.getStrata();
+        for (int key : getKeys(strata)) {
+            System.out.print(String.format("%6s |%s| %s\n", "S" + key,
+                    bar(strata, key, width), "stratum " + key));
+        }
+
+        Map<String, String> ids = new HashMap<String, String>();
+        for (DataRow row : rel_table_state) {
+            ids.put(row.getName(), row.getId());
+        }
+        Timeline.Intervals relations = timeline.getRelations();
+        SymbolTable symbols = run.getSymbolTable();
+        for (int key : getKeys(relations)) {
+            String name = symbols.resolve(key);
+            String id = ids.containsKey(name) ? ids.get(name) : "";
+            System.out.print(String.format("%6s |%s| %s\n", id,
+                    bar(relations, key, width), name));
+        }
+
+        // number of relations evaluated in each bucket, on average
+        double[] active = new double[TIMELINE_WIDTH];
+        for (int i = 0; i < relations.size(); i++) {
+            cover(active, relations.getStart(i), relations.getEnd(i), width);
+        }
+        char[] chars = new char[TIMELINE_WIDTH];
+        for (int b = 0; b < TIMELINE_WIDTH; b++) {
+            long n = Math.round(active[b] / width);
+            chars[b] = n == 0 ? (active[b] > 0 ? '.' : ' ') : n > 9 ? '+' : (char) ('0' + n);
+        }
+        System.out.print(String.format("%6s |%s| %s\n", "", new String(chars),
+                "relations evaluated at once"));
+
+        // sweep over the start and end times of the relations
+        int n = relations.size();
+        double[] starts = new double[n];
+        double[] ends = new double[n];
+        for (int i = 0; i < n; i++) {
+            starts[i] = relations.getStart(i);
+            ends[i] = relations.getEnd(i);
+        }
+        Arrays.sort(starts);
+        Arrays.sort(ends);
+        int running = 0;
+        int peak = 0;
+        double idle = 0;
+        double last = 0;
+        for (int i = 0, j = 0; i < n || j < n;) {
+            double t = i < n && starts[i] <= ends[j] ? starts[i] : ends[j];
+            if (running == 0) {
+                idle += Math.max(0, t - last);
+            }
+            if (i < n && starts[i] <= ends[j]) {
+                running++;
+                peak = Math.max(peak, running);
+                i++;
+            } else {
+                running--;
+                j++;
+            }
+            last = t;
+        }
+        idle += Math.max(0, end - last);
+
+        System.out.println("\n Idle time: " + formatTime(idle) + "s");
+        System.out.println(" Peak parallelism: " + peak + " relations");
+    }
+
+    /**
+     * @return the keys of the intervals, ordered by their first start time
+     */
+    private static Integer[] getKeys(Timeline.Intervals intervals) {
+        final Map<Integer, Double> first = new HashMap<Integer, Double>();
+        for (int i = 0; i < intervals.size(); i++) {
+            Double start = first.get(intervals.getKey(i));
+            if (start == null || intervals.getStart(i) < start) {
+                first.put(intervals.getKey(i), intervals.getStart(i));
+            }
+        }
+        Integer[] keys = first.keySet().toArray(new Integer[first.size()]);
+        Arrays.sort(keys, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int cmp = Double.compare(first.get(a), first.get(b));
+                return cmp != 0 ? cmp : a.compareTo(b);
+            }
+        });
+        return keys;
+    }
+
+    /**
+     * @return the bar of all intervals with the given key
+     */
+    private static String bar(Timeline.Intervals intervals, int key, double width) {
+        double[] covered = new double[TIMELINE_WIDTH];
+        for (int i = 0; i < intervals.size(); i++) {
+            if (intervals.getKey(i) == key) {
+                cover(covered, intervals.getStart(i), intervals.getEnd(i), width);
+            }
+        }
+        char[] chars = new char[TIMELINE_WIDTH];
+        for (int b = 0; b < TIMELINE_WIDTH; b++) {
+            chars[b] = covered[b] >= width / 2 ? '#' : covered[b] > 0 ? '-' : ' ';
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Adds the time each bucket is covered by the interval. An interval too
+     * short to be measured still covers its bucket.
+     */
+    private static void cover(double[] covered, double start, double end, double width) {
+        int first = Math.min((int) (start / width), TIMELINE_WIDTH - 1);
+        int last = Math.min((int) (end / width), TIMELINE_WIDTH - 1);
+        for (int b = Math.max(first, 0); b <= last; b++) {
+            double overlap = Math.min(end, (b + 1) * width) - Math.max(start, b * width);
+            covered[b] += Math.max(overlap, Double.MIN_VALUE);
+        }
+    }
+
+    private static String formatTime(double seconds) {
+        return String.format("%.3f", seconds);
+    }
+
+    private static String center(String text, int width) {
+        if (text.length() >= width) {
+            return text.substring(0, width);
+        }
+        int left = (width - text.length()) / 2;
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < width; i++) {
+            str.append(i >= left && i < left + text.length() ? text.charAt(i - left) : ' ');
+        }
+        return str.toString();
+    }
+
+    /**
+     * @return the quantiles of the runtime per iteration of a row, as columns
+     */
+    private String formatQuantiles(DataRow row) {
+        return String.format("%8s%8s%8s%8s", run.formatTime(row.getP50()),
+                run.formatTime(row.getP90()), run.formatTime(row.getP99()),
+                run.formatTime(row.getMax()));
+    }
 
+    /**
+     * Returns the rows of a table in the current order, which is only sorted
+     * the first time it is used for the table.
+     */
+    private DataRow[] sort(SortedTable table) {
+        return table.sorted(getSortKey(sort_col), getComparator());
+    }
+
+    /**
+     * @return the key the order of a column in the current direction is
+     *         cached under
+     */
+    private int getSortKey(int col) {
+        return col * 2 + (sortDir > 0 ? 0 : 1);
+    }
+
+    /**
+     * @return the table of the given name, made of the rows the first time
+     */
+    private SortedTable getTable(String name, DataRow[] rows) {
+        SortedTable table = tables.get(name);
+        if (table == null) {
+            table = new SortedTable(rows);
+            tables.put(name, table);
+        }
+        return table;
+    }
+
+    /**
+     * @return the table of the rules of a relation
+     */
+    private SortedTable getRelRulTable(String name) {
+        SortedTable table = tables.get("rel " + name);
+        if (table == null) {
+            // only the rules of this relation are loaded
+            table = new SortedTable(run.getRulTable(name));
+            tables.put("rel " + name, table);
+        }
+        return table;
+    }
+
+    /**
+     * @return the table of the versions of a recursive rule
+     */
+    private SortedTable getVerTable(String relation, String rule) {
+        SortedTable table = tables.get("ver " + rule);
+        if (table == null) {
+            table = new SortedTable(run.getVersions(relation, rule));
+            tables.put("ver " + rule, table);
+        }
+        return table;
+    }
+
+    /**
+     * @return the order of the current sort column and direction
+     */
+    private Comparator<DataRow> getComparator() {
         switch (sort_col) {
-        case 0:
-            Arrays.sort(rel_table_state,
-                    DataComparator.getComparator(sortDir, DataComparator.TIME));
-            break;
         case 1:
-            Arrays.sort(rel_table_state,
-                    DataComparator.getComparator(sortDir, DataComparator.NR_T));
-            break;
+            return DataComparator.getComparator(sortDir, DataComparator.NR_T);
         case 2:
-            Arrays.sort(rel_table_state, DataComparator.getComparator(sortDir, DataComparator.R_T));
-            break;
+            return DataComparator.getComparator(sortDir, DataComparator.R_T);
         case 3:
-            Arrays.sort(rel_table_state, DataComparator.getComparator(sortDir, DataComparator.C_T));
-            break;
+            return DataComparator.getComparator(sortDir, DataComparator.C_T);
         case 4:
-            Arrays.sort(rel_table_state, DataComparator.getComparator(sortDir, DataComparator.TUP));
-            break;
+            return DataComparator.getComparator(sortDir, DataComparator.TUP);
         case 5:
-            Arrays.sort(rel_table_state, DataComparator.getComparator(sortDir, DataComparator.ID));
-            break;
+            return DataComparator.getComparator(sortDir, DataComparator.ID);
         case 6:
-            Arrays.sort(rel_table_state, DataComparator.getComparator(sortDir, DataComparator.NAME));
-            break;
+            return DataComparator.getComparator(sortDir, DataComparator.NAME);
+        case 7:
+            return DataComparator.getComparator(sortDir, DataComparator.P50);
+        case 8:
+            return DataComparator.getComparator(sortDir, DataComparator.P90);
+        case 9:
+            return DataComparator.getComparator(sortDir, DataComparator.P99);
+        case 10:
+            return DataComparator.getComparator(sortDir, DataComparator.MAX);
         default:
-            Arrays.sort(rel_table_state,
-                    DataComparator.getComparator(sortDir, DataComparator.TIME));
-            break;
+            return DataComparator.getComparator(sortDir, DataComparator.TIME);
         }
+    }
+
+    /**
+     * @return whether the rankings of a live run give the current order
+     */
+    private boolean isRanked() {
+        return sort_col == 0 && sortDir == 1;
+    }
+
+    /**
+     * @return the rule table, which needs the rules of all relations
+     */
+    private DataRow[] getRulTable() {
+        if (rul_table_state == null) {
+            rul_table_state = live_tables != null ? live_tables.getRulTable() : run.getRulTable();
+        }
+        return rul_table_state;
+    }
+
+    /**
+     * @return the name of the relation with the given id, or null
+     */
+    private String getRelationName(String id) {
+        for (DataRow row : rel_table_state) {
+            if (row.getId().equals(id)) {
+                return row.getName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the rows of the rules of the relation of the given rule id
+     */
+    private DataRow[] getRulTable(String rule) {
+        String[] part = rule.split("\\.", 2);
+        String name = getRelationName("R" + part[0].substring(1));
+        if (name == null) {
+            return new DataRow[0];
+        }
+        return getRelRulTable(name).getRows();
+    }
 
-        String[][] table = run.formatTable(rel_table_state, precision);
+    /**
+     * Prints the relation table sorted by the current sort column.
+     */
+    private void rel(String c) {
+        printRelTable(sort(getTable("rel", rel_table_state)));
+    }
+
+    /**
+     * Prints the first n rows of the relation table in the current order. A
+     * live run ranks its relations as it grows, otherwise they are selected
+     * without sorting the table.
+     */
+    private void relTop(int n) {
+        DataRow[] table = isRanked() ? run.getTopRelations(n) : null;
+        if (table == null) {
+            table = DataComparator.top(rel_table_state, getComparator(), n);
+        }
+        printRelTable(table);
+    }
+
+    private void printRelTable(DataRow[] table) {
         System.out.print(String.format(" ----- Relation Table -----\n"));
-        System.out.print(String.format("%8s%8s%8s%8s%15s%6s%1s%-25s\n\n", 
-                "TOT_T", "NREC_T", "REC_T", "COPY_T", "TUPLES", "ID", "", "NAME"));
-        for (final String[] row : table) {
+        System.out.print(String.format("%8s%8s%8s%8s%s%15s%6s%1s%-25s\n\n", 
+                "TOT_T", "NREC_T", "REC_T", "COPY_T", QUANTILE_HEADER, "TUPLES", "ID", "", "NAME"));
+        for (final DataRow row : table) {
             String out;
-            out = String.format("%8s%8s%8s%8s%15s%6s%1s%-5s\n",
-                    (row[0]), (row[1]), (row[2]),
-                    (row[3]), row[4], row[6], "", row[5]);
+            out = String.format("%8s%8s%8s%8s%s%15s%6s%1s%-5s\n",
+                    run.formatTime(row.getTot_time()), run.formatTime(row.getNonrec_time()),
+                    run.formatTime(row.getRec_time()), run.formatTime(row.getCopy_time()),
+                    formatQuantiles(row), run.formatNum(precision, row.getNum_tuples()), row.getId(), "", row.getName());
             System.out.print(out);
         }
     }
 
-    /***
-     rul table :
-     ROW[0] = TOT_T
-     ROW[1] = NREC_T
-     ROW[2] = REC_T
-     ROW[3] = COPY_T
-     ROW[4] = TUPLES
-     ROW[5] = RUL NAME
-     ROW[6] = ID
-     ROW[7] = REL_NAME
-     ROW[8] = VER
+    /**
+     * Prints the rule table sorted by the current sort column.
      */
     private void rul(String c) {
-        switch (sort_col) {
-        case 0:
-            Arrays.sort(rul_table_state,
-                    DataComparator.getComparator(sortDir, DataComparator.TIME));
-            break;
-        case 1:
-            Arrays.sort(rul_table_state,
-                    DataComparator.getComparator(sortDir, DataComparator.NR_T));
-            break;
-        case 2:
-            Arrays.sort(rul_table_state, DataComparator.getComparator(sortDir, DataComparator.R_T));
-            break;
-        case 3:
-            Arrays.sort(rul_table_state, DataComparator.getComparator(sortDir, DataComparator.C_T));
-            break;
-        case 4:
-            Arrays.sort(rul_table_state, DataComparator.getComparator(sortDir, DataComparator.TUP));
-            break;
-        case 5:
-            Arrays.sort(rul_table_state, DataComparator.getComparator(sortDir, DataComparator.ID));
-            break;
-        case 6:
-            Arrays.sort(rul_table_state, DataComparator.getComparator(sortDir, DataComparator.NAME));
-            break;
-        default:
-            Arrays.sort(rul_table_state,
-                    DataComparator.getComparator(sortDir, DataComparator.TIME));
-            break;
+        printRulTable(sort(getTable("rul", getRulTable())));
+    }
+
+    /**
+     * Prints the first n rows of the rule table in the current order. Only the
+     * rules of the top relations are computed for a live run.
+     */
+    private void rulTop(int n) {
+        DataRow[] table = isRanked() ? run.getTopRules(n) : null;
+        if (table == null) {
+            table = DataComparator.top(getRulTable(), getComparator(), n);
         }
-        String[][] table = run.formatTable(rul_table_state, precision);
+        printRulTable(table);
+    }
+
+    private void printRulTable(DataRow[] table) {
         System.out.print("  ----- Rule Table -----\n");
-        System.out.print(String.format("%8s%8s%8s%8s%15s    %-5s\n\n", "TOT_T",
-                "NREC_T", "REC_T", "COPY_T", "TUPLES", "ID RELATION"));
-        for (final String[] row : table) {
+        System.out.print(String.format("%8s%8s%8s%8s%s%15s    %-5s\n\n", "TOT_T",
+                "NREC_T", "REC_T", "COPY_T", QUANTILE_HEADER, "TUPLES", "ID RELATION"));
+        for (final DataRow row : table) {
 
-            String out = String.format("%8s%8s%8s%8s%15s%8s %-25s\n",
-                    (row[0]), (row[1]), (row[2]),
-                    (row[3]), row[4], row[6], row[7]);
+            String out = String.format("%8s%8s%8s%8s%s%15s%8s %-25s\n",
+                    run.formatTime(row.getTot_time()), run.formatTime(row.getNonrec_time()),
+                    run.formatTime(row.getRec_time()), run.formatTime(row.getCopy_time()),
+                    formatQuantiles(row), run.formatNum(precision, row.getNum_tuples()), row.getId(), row.getRelation());
             System.out.print(out);
         }
     }
 
     private void id(String col) {
-        String[][] table = run.formatTable(rul_table_state, precision);
         if (col.equals("0")) {
             System.out.print(String.format("%7s%2s%-25s\n\n", "ID", "", "NAME"));
-            Arrays.sort(table,
+            DataRow[] table = getTable("rul", getRulTable()).sorted(getSortKey(6),
                     DataComparator.getComparator(sortDir, DataComparator.NAME));
-            for (final String[] row : table) {
-                System.out.print(String.format("%7s%2s%-25s\n", row[6], "", row[5]));
+            for (final DataRow row : table) {
+                System.out.print(String.format("%7s%2s%-25s\n", row.getId(), "", row.getName()));
             }
         } else {
-            for (final String[] row : table) {
-                if (((String) row[6]).equals(col)) {
-                    System.out.print(String.format("%7s%2s%-25s\n", row[6], "", row[5]));
+            for (final DataRow row : getRulTable()) {
+                if (row.getId().equals(col)) {
+                    System.out.print(String.format("%7s%2s%-25s\n", row.getId(), "", row.getName()));
                 }
             }
         }
     }
 
     private void relRul(String str) {
-        switch (sort_col) {
-        case 0:
-            Arrays.sort(rul_table_state,
-                    DataComparator.getComparator(sortDir, DataComparator.TIME));
-            break;
-        case 1:
-            Arrays.sort(rul_table_state,
-                    DataComparator.getComparator(sortDir, DataComparator.NR_T));
-            break;
-        case 2:
-            Arrays.sort(rul_table_state,
-                    DataComparator.getComparator(sortDir, DataComparator.R_T));
-            break;
-        case 3:
-            Arrays.sort(rul_table_state,
-                    DataComparator.getComparator(sortDir, DataComparator.C_T));
-            break;
-        case 4:
-            Arrays.sort(rul_table_state,
-                    DataComparator.getComparator(sortDir, DataComparator.TUP));
-            break;
-        case 5:
-            Arrays.sort(rul_table_state,
-                    DataComparator.getComparator(sortDir, DataComparator.ID));
-            break;
-        case 6:
-            Arrays.sort(rul_table_state,
-                    DataComparator.getComparator(sortDir, DataComparator.NAME));
-            break;
-        default:
-            Arrays.sort(rul_table_state,
-                    DataComparator.getComparator(sortDir, DataComparator.TIME));
-            break;
-        }
-        String[][] rul_table = run.formatTable(rul_table_state, precision);
-        String[][] rel_table = run.formatTable(rel_table_state, precision);
         System.out.print("  ----- Rules of a Relation -----\n");
-        System.out.print(String.format("%8s%8s%8s%8s%10s%8s %-25s\n\n", "TOT_T",
-                "NREC_T", "REC_T", "COPY_T", "TUPLES", "ID", "NAME"));
+        System.out.print(String.format("%8s%8s%8s%8s%s%10s%8s %-25s\n\n", "TOT_T",
+                "NREC_T", "REC_T", "COPY_T", QUANTILE_HEADER, "TUPLES", "ID", "NAME"));
         String name = "";
-        for (final String[] row : rel_table) {
-            if (((String) row[5]).equals(str) || ((String) row[6]).equals(str)) {
-                System.out.print(String.format("%8s%8s%8s%8s%10s%8s %-25s\n",
-                        (row[0]), (row[1]),
-                        (row[2]), (row[3]),
-                        row[4], row[6], row[5]));
-                name = (String) row[5];
+        for (final DataRow row : rel_table_state) {
+            if (row.getName().equals(str) || row.getId().equals(str)) {
+                System.out.print(String.format("%8s%8s%8s%8s%s%10s%8s %-25s\n",
+                        run.formatTime(row.getTot_time()), run.formatTime(row.getNonrec_time()),
+                        run.formatTime(row.getRec_time()), run.formatTime(row.getCopy_time()),
+                        formatQuantiles(row), run.formatNum(precision, row.getNum_tuples()), row.getId(), row.getName()));
+                name = row.getName();
                 break;
             }
         }
+        DataRow[] rul_table = sort(getRelRulTable(name));
         System.out.print( " ---------------------------------------------------------\n");
-        for (final String[] row : rul_table) {
-            if (((String) row[7]).equals(name)) {
-                System.out.print(String.format("%8s%8s%8s%8s%10s%8s %-25s\n",
-                        (row[0]), (row[1]),
-                        (row[2]), (row[3]),
-                        row[4], row[6], row[7]));
+        for (final DataRow row : rul_table) {
+            if (row.getRelation().equals(name)) {
+                System.out.print(String.format("%8s%8s%8s%8s%s%10s%8s %-25s\n",
+                        run.formatTime(row.getTot_time()), run.formatTime(row.getNonrec_time()),
+                        run.formatTime(row.getRec_time()), run.formatTime(row.getCopy_time()),
+                        formatQuantiles(row), run.formatNum(precision, row.getNum_tuples()), row.getId(), row.getRelation()));
             }
         }
         String src = "";
@@ -453,10 +828,10 @@ public class Tui {
             src = run.getRelation(name).getLocator();
         }
         System.out.print("\nSrc locator: " + src + "\n\n");
-        for (final String[] row : rul_table) {
-            if (((String) row[7]).equals(name)) {
+        for (final DataRow row : rul_table) {
+            if (row.getRelation().equals(name)) {
                 System.out.print(
-                        (String.format("%7s%2s%-25s\n", row[6], "", row[5])));
+                        (String.format("%7s%2s%-25s\n", row.getId(), "", row.getName())));
             }
         }
     }
@@ -468,88 +843,57 @@ public class Tui {
         }
         String[] part = str.split("\\.", 2);
         String strRel = "R" + part[0].substring(1);
-        Object[][] ver_table = run.getVersions(strRel, str);
-        switch (sort_col) {
-        case 0:
-            Arrays.sort(ver_table,
-                    DataComparator.getComparator(sortDir, DataComparator.TIME));
-            break;
-        case 1:
-            Arrays.sort(ver_table,
-                    DataComparator.getComparator(sortDir, DataComparator.NR_T));
-            break;
-        case 2:
-            Arrays.sort(ver_table,
-                    DataComparator.getComparator(sortDir, DataComparator.R_T));
-            break;
-        case 3:
-            Arrays.sort(ver_table,
-                    DataComparator.getComparator(sortDir, DataComparator.C_T));
-            break;
-        case 4:
-            Arrays.sort(ver_table,
-                    DataComparator.getComparator(sortDir, DataComparator.TUP));
-            break;
-        case 5:
-            Arrays.sort(ver_table,
-                    DataComparator.getComparator(sortDir, DataComparator.ID));
-            break;
-        case 6:
-            Arrays.sort(ver_table,
-                    DataComparator.getComparator(sortDir, DataComparator.NAME));
-            break;
-        default:
-            Arrays.sort(ver_table,
-                    DataComparator.getComparator(sortDir, DataComparator.TIME));
-            break;
-        }
-        String[][] rul_table = run.formatTable(rul_table_state, precision);
+        DataRow[] ver_table = sort(getVerTable(strRel, str));
+        DataRow[] rul_table = getRulTable(str);
         System.out.print("  ----- Rule Versions Table -----\n");
-        System.out.print(String.format("%8s%8s%8s%8s%10s%6s   %-5s\n\n", "TOT_T",
-                "NREC_T", "REC_T", "COPY_T", "TUPLES", "VER", "ID RELATION"));
+        System.out.print(String.format("%8s%8s%8s%8s%s%10s%6s   %-5s\n\n", "TOT_T",
+                "NREC_T", "REC_T", "COPY_T", QUANTILE_HEADER, "TUPLES", "VER", "ID RELATION"));
         boolean found = false;
-        for (final String[] row : rul_table) {
-            if (((String) row[6]).equals(str)) {
-                System.out.print(String.format("%8s%8s%8s%8s%10s%6s%7s %-25s\n",
-                        (row[0]), (row[1]),
-                        (row[2]), (row[3]),
-                        row[4], "", row[6], row[7]));
+        for (final DataRow row : rul_table) {
+            if (row.getId().equals(str)) {
+                System.out.print(String.format("%8s%8s%8s%8s%s%10s%6s%7s %-25s\n",
+                        run.formatTime(row.getTot_time()), run.formatTime(row.getNonrec_time()),
+                        run.formatTime(row.getRec_time()), run.formatTime(row.getCopy_time()),
+                        formatQuantiles(row), run.formatNum(precision, row.getNum_tuples()), "", row.getId(), row.getRelation()));
                 found = true;
             }
         }
         System.out.print(" ---------------------------------------------------------\n");
-        for (final Object[] row : ver_table) {
-            System.out.print(String.format("%8s%8s%8s%8s%10s%6s%7s %-25s\n",
-                    run.formatTime(row[0]), run.formatTime(row[1]), run.formatTime(row[2]),
-                    run.formatTime(row[3]), row[4], row[8], row[6],
-                    row[7]));
+        for (final DataRow row : ver_table) {
+            System.out.print(String.format("%8s%8s%8s%8s%s%10s%6s%7s %-25s\n",
+                    run.formatTime(row.getTot_time()), run.formatTime(row.getNonrec_time()),
+                    run.formatTime(row.getRec_time()), run.formatTime(row.getCopy_time()),
+                    formatQuantiles(row), row.getNum_tuples(), row.getVersion(), row.getId(),
+                    row.getRelation()));
 
         }
         if (found) {
             if (ver_table.length > 0) {
-                System.out.print("\nSrc locator: " + ver_table[0][9] + "\n\n");
+                System.out.print("\nSrc locator: " + ver_table[0].getLocator() + "\n\n");
             } else if (rul_table.length > 0){
-                System.out.print("\nSrc locator-: " + rul_table[0][10] + "\n\n");
+                String src = rul_table[0].getLocator();
+                System.out.print("\nSrc locator-: " + (src != null ? src : "-") + "\n\n");
             }
         }
-        for (final String[] row : rul_table) {
-            if (((String) row[6]).equals(str)) {
+        for (final DataRow row : rul_table) {
+            if (row.getId().equals(str)) {
                 System.out.print(
-                        (String.format("%7s%2s%-25s\n", row[6], "", row[5])));
+                        (String.format("%7s%2s%-25s\n", row.getId(), "", row.getName())));
             }
         }
     }
 
     private void iterRel(String c, String col) {
-        String[][] table = run.formatTable(rel_table_state, -1);
         List<Iteration> iter;
-        for (final String[] row : table) {
-            if (((String) row[6]).equals(c) || ((String) row[5]).equals(c)) {
+        for (final DataRow row : rel_table_state) {
+            if (row.getId().equals(c) || row.getName().equals(c)) {
                 System.out.print(
-                        (String.format("%4s%2s%-25s\n\n", row[6], "", row[5])));
+                        (String.format("%4s%2s%-25s\n\n", row.getId(), "", row.getName())));
 
-                iter = run.getRelation_map().get((String) row[5])
-                        .getIterations();
+                Relation rel = run.getRelation(row.getName());
+                iter = rel.getIterations();
+                // in streaming mode the oldest iterations are no longer kept
+                int first = rel.getIterationTable().size() - iter.size();
                 List<Object> list = new ArrayList<Object>();
                 if (col.equals("tot_t")) {
                     for (Iteration i : iter) {
@@ -557,21 +901,21 @@ public class Tui {
                     }
                     System.out.print(
                             (String.format("%4s   %-6s\n\n", "NO", "RUNTIME")));
-                    graphD(list);
+                    graphD(list, first);
                 } else if (col.equals("copy_t")) {
                     for (Iteration i : iter) {
                         list.add(i.getCopy_time());
                     }
                     System.out.print(
                             (String.format("%4s   %-6s\n\n", "NO", "COPYTIME")));
-                    graphD(list);
+                    graphD(list, first);
                 } else if (col.equals("tuples")) {
                     for (Iteration i : iter) {
                         list.add(i.getNum_tuples());
                     }
                     System.out.print(
                             (String.format("%4s   %-6s\n\n", "NO", "TUPLES")));
-                    graphL(list);
+                    graphL(list, first);
                 }
                 break;
             }
@@ -580,15 +924,20 @@ public class Tui {
     }
 
     private void iterRul(String c, String col) {
-        String[][] table = run.formatTable(rul_table_state, precision);
         List<Iteration> iter;
-        for (String[] row : table) {
-            if (((String) row[6]).equals(c)) {
+        for (DataRow row : getRulTable(c)) {
+            if (row.getId().equals(c)) {
                 System.out.print(
-                        (String.format("%6s%2s%-25s\n\n", row[6], "", row[5])));
+                        (String.format("%6s%2s%-25s\n\n", row.getId(), "", row.getName())));
 
-                iter = run.getRelation_map().get((String) row[7])
-                        .getIterations();
+                Relation rel = run.getRelation(row.getRelation());
+                iter = rel.getIterations();
+                int evaluated = 0;
+                for (RuleSeries rul : rel.getIterationTable().getRuleSeries()) {
+                    if (rul.getId().equals(c)) {
+                        evaluated = Math.max(evaluated, rul.getCount());
+                    }
+                }
                 List<Object> list = new ArrayList<Object>();
                 if (col.equals("tot_t")) {
                     for (Iteration i : iter) {
@@ -606,7 +955,7 @@ public class Tui {
                     }
                     System.out.print(
                             (String.format("%4s   %-6s\n\n", "NO", "RUNTIME")));
-                    graphD(list);
+                    graphD(list, Math.max(0, evaluated - list.size()));
                 } else if (col.equals("tuples")) {
                     for (Iteration i : iter) {
                         Boolean add = false;
@@ -623,7 +972,7 @@ public class Tui {
                     }
                     System.out.print(
                             (String.format("%4s   %-6s\n\n", "NO", "TUPLES")));
-                    graphL(list);
+                    graphL(list, Math.max(0, evaluated - list.size()));
                 }
                 break;
             }
@@ -637,34 +986,37 @@ public class Tui {
         }
         String[] part = c.split("\\.", 2);
         String strRel = "R" + part[0].substring(1);
-        Object[][] ver_table = run.getVersions(strRel, c);
-        System.out.print((String.format("%6s%2s%-25s\n\n", ver_table[0][6], "",
-                ver_table[0][5])));
+        DataRow[] ver_table = run.getVersions(strRel, c);
+        System.out.print((String.format("%6s%2s%-25s\n\n", ver_table[0].getId(), "",
+                ver_table[0].getName())));
         List<Object> list = new ArrayList<Object>();
         if (col.equals("tot_t")) {
-            for (Object[] row : ver_table) {
-                list.add(row[0]);
+            for (DataRow row : ver_table) {
+                list.add(row.getTot_time());
             }
             System.out.print((String.format("%4s   %-6s\n\n", "NO", "RUNTIME")));
-            graphD(list);
+            graphD(list, 0);
 
         } else if (col.equals("copy_t")) {
-            for (Object[] row : ver_table) {
-                list.add(row[3]);
+            for (DataRow row : ver_table) {
+                list.add(row.getCopy_time());
             }
             System.out.print((String.format("%4s   %-6s\n\n", "NO", "COPYTIME")));
-            graphD(list);
+            graphD(list, 0);
 
         } else if (col.equals("tuples")) {
-            for (Object[] row : ver_table) {
-                list.add(row[4]);
+            for (DataRow row : ver_table) {
+                list.add(row.getNum_tuples());
             }
             System.out.print((String.format("%4s   %-6s\n\n", "NO", "TUPLES")));
-            graphL(list);
+            graphL(list, 0);
         }
     }
 
-    private void graphD(List<Object> list) {
+    /**
+     * @param first number of the first bar
+     */
+    private void graphD(List<Object> list, int first) {
         Double max = 0.0;
         Double time;
         for (Object o : list) {
@@ -673,7 +1025,7 @@ public class Tui {
                 max = time;
             }
         }
-        int i = 0;
+        int i = first;
         for (Object o : list) {
             time = (Double) o;
             int len = (int) ((time / max) * (67));
@@ -684,7 +1036,10 @@ public class Tui {
         }
     }
 
-    private void graphL(List<Object> list) {
+    /**
+     * @param first number of the first bar
+     */
+    private void graphL(List<Object> list, int first) {
         Long max = 0L;
         Long num;
         Long tot = 0L;
@@ -694,7 +1049,7 @@ public class Tui {
                 max = num;
             }
         }
-        int i = 0;
+        int i = first;
         for (Object o : list) {
             num = (Long) o;
             tot += num;
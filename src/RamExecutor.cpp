@@ -520,7 +520,7 @@ namespace {
     }
 
 
-    void run(const RamExecutorConfig& config, const QueryExecutionStrategy& executor, std::ostream* report, std::ostream* profile, const RamStatement& stmt, RamEnvironment& env) {
+    void run(const RamExecutorConfig& config, const QueryExecutionStrategy& executor, std::ostream* report, ProfileLog* profile, const RamStatement& stmt, RamEnvironment& env) {
 
         class Interpreter : public RamVisitor<bool> {
 
@@ -528,14 +528,14 @@ namespace {
             RamEnvironment& env;
             const QueryExecutionStrategy& queryExecutor;
             std::ostream* report;
-            std::ostream* profile; 
+            ProfileLog* profile; 
 
         public:
 
             Interpreter(
                     const RamExecutorConfig& config, RamEnvironment& env,
                     const QueryExecutionStrategy& executor, std::ostream* report,
-                    std::ostream* profile
+                    ProfileLog* profile
             )
                 : config(config), env(env), queryExecutor(executor), report(report), profile(profile) {}
 
@@ -611,7 +611,7 @@ namespace {
             }
 
             bool visitLogSize(const RamLogSize& print) {
-                *profile << print.getLabel() << env.getRelation(print.getRelation()).size() << "\n";
+                profile->logSize(print.getLabel().c_str(), env.getRelation(print.getRelation()).size());
                 return true;
             }
 
@@ -698,12 +698,11 @@ void RamGuidedInterpreter::applyOn(const RamStatement& stmt, RamEnvironment& env
     if (getConfig().isLogging()) {
         std::string fname = getConfig().getProfileName();
         // open output stream
-        std::ofstream os(fname);
+        ProfileLog os(fname, getConfig().isBinaryProfile());
         if (!os.is_open()) {
             // TODO: use different error reporting here!!
             std::cerr << "Cannot open fact file " << fname << " for profiling\n";
         }
-        os << "@start-debug\n";
         run(getConfig(), queryStrategy, report, &os, stmt, env);
     } else {
         run(getConfig(), queryStrategy, report, nullptr, stmt, env);
@@ -1063,9 +1062,7 @@ namespace {
                 std::string label = line.str();
 
                 // print log entry
-                out << "{ auto lease = getOutputLock().acquire(); ";
-                out << "profile << R\"(#" << label << ";)\" << num_failed_proofs << \"\\n\";\n";
-                out << "}";
+                out << "profile.logSize(R\"(#" << label << ";)\", num_failed_proofs);\n";
             }
 
             out << "}\n";       // end lambda
@@ -1094,9 +1091,7 @@ namespace {
         }
 
         void visitLogSize(const RamLogSize& print, std::ostream& out) {
-            out << "{ auto lease = getOutputLock().acquire(); \n";
-            out << "profile << R\"(" << print.getLabel() << ")\" <<  " << getRelationName(print.getRelation()) << ".size() << \"\\n\";\n";
-            out << "}";
+            out << "profile.logSize(R\"(" << print.getLabel() << ")\", " << getRelationName(print.getRelation()) << ".size());\n";
         }
 
         // -- control flow statements --
@@ -1722,6 +1717,7 @@ std::string RamCompiler::compileToBinary(const SymbolTable& symTable, const RamS
    
     if (getConfig().isLogging()) {
         os << "std::string profiling_fname;\n";
+        os << "bool profiling_binary;\n";
     }
 
     // declare symbol table
@@ -1781,7 +1777,7 @@ std::string RamCompiler::compileToBinary(const SymbolTable& symTable, const RamS
 
     os << classname;
     if (getConfig().isLogging()) {
-       os << "(std::string pf=\"profile.log\") : profiling_fname(pf)";
+       os << "(std::string pf=\"profile.log\", bool pb=" << getConfig().isBinaryProfile() << ") : profiling_fname(pf), profiling_binary(pb)";
        if (initCons.size() > 0) {
            os << ",\n";
        }
@@ -1823,8 +1819,7 @@ std::string RamCompiler::compileToBinary(const SymbolTable& symTable, const RamS
     // add actual program body
     os << "// -- query evaluation --\n";
     if (getConfig().isLogging()) {
-        os << "std::ofstream profile(profiling_fname);\n";
-        os << "profile << \"@start-debug\\n\";\n";
+        os << "ProfileLog profile(profiling_fname, profiling_binary);\n";
         genCode(os, stmt, getConfig(), indices);
     } else {
         genCode(os, stmt, getConfig(), indices);
@@ -73,12 +73,15 @@ class RamExecutorConfig {
     /** A filename for profile log */
     std::string profileName; 
 
+    /** A flag for writing the profile log in the binary format */
+    bool binaryProfile;
+
     /** A flag for enabling debug mode */
     bool debug;
 
 public:
 
-    RamExecutorConfig() : sourceFileName("-unknown-"), factFileDir("./"), outputDir("./"), num_threads(1), logging(false), compileScript("souffle-compile"), debug(false) {}
+    RamExecutorConfig() : sourceFileName("-unknown-"), factFileDir("./"), outputDir("./"), num_threads(1), logging(false), compileScript("souffle-compile"), binaryProfile(false), debug(false) {}
 
     // -- getters and setters --
 
@@ -142,6 +145,14 @@ public:
         return profileName;
     }
 
+    void setBinaryProfile(bool val = true) {
+        binaryProfile = val;
+    }
+
+    bool isBinaryProfile() const {
+        return binaryProfile;
+    }
+
     void setDebug(bool val = true) {
         debug = val;
     }
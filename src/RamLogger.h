@@ -38,7 +38,15 @@
 #pragma once
 
 #include <iostream>
+#include <fstream>
+#include <atomic>
 #include <chrono>
+#include <cstdint>
+#include <cstring>
+#include <memory>
+#include <string>
+#include <unordered_map>
+#include <vector>
 
 #include "ParallelUtils.h"
 
@@ -51,6 +59,269 @@ inline Lock& getOutputLock() {
 }
 
 
+/**
+ * The file profile events are written to. Events are either written as
+ * text lines -- a label followed by the measured value -- or in the binary
+ * format decoded by souffleprof.
+ *
+ * A binary profile starts with the bytes "SPRB" and a format version,
+ * followed by records of 32 bytes in little-endian order:
+ *
+ *      [label id (u32); kind (u32); value (u64); sequence number (u64);
+ *       start time (u64)]
+ *
+ * Timers also report when they started and ended, relative to the time the
+ * log was opened: in nanoseconds in a binary record, and as two more fields
+ * in seconds after the duration of a text line.
+ *
+ * The text of a label is written only once, by a LABEL record holding its
+ * length followed by the text itself. Further events of the label merely
+ * reference its id.
+ *
+ * Binary events are collected in a buffer of the logging thread and are
+ * written in batches, so threads only synchronize when a buffer is full.
+ * Batches of different threads interleave in the file; the sequence number
+ * of an event, drawn from an atomic counter, restores the global order.
+ * To bound how far the reader has to reorder, a thread writing its batch
+ * also writes the events other threads hold back for more than MAX_LAG
+ * events, and all buffers are written at the end of a stratum.
+ * Text lines have no sequence number and are still written one by one
+ * under the output lock.
+ */
+class ProfileLog {
+
+    // the kinds of binary records
+    enum Kind { LABEL = 0, TIME = 1, SIZE = 2 };
+
+    // the number of events a thread buffers before writing them
+    static const size_t BUFFER_SIZE = 1024;
+
+    // the number of events after which a buffered event is written even
+    // if its buffer is not full, e.g., since its thread is idle
+    static const uint64_t MAX_LAG = 1 << 16;
+
+    // marks a record without a start time
+    static const uint64_t NO_TIME = ~(uint64_t)0;
+
+    struct Record {
+        uint32_t label;
+        uint32_t kind;
+        uint64_t value;
+        uint64_t seq;
+        // the start time in nanoseconds since the log was opened
+        uint64_t time;
+    };
+
+    // the events buffered by one thread
+    struct Buffer {
+        // guards the records, which other threads may write when they lag
+        SpinLock lock;
+        std::vector<Record> records;
+        // the label ids known to the thread
+        std::unordered_map<const char*, uint32_t> labels;
+    };
+
+    // the output file
+    std::ofstream out;
+
+    // whether the binary format is written
+    bool binary;
+
+    // distinguishes this log from earlier logs of the threads
+    uint64_t log_id;
+
+    // the sequence number of the next event
+    std::atomic<uint64_t> seq;
+
+    // the time the log was opened, start and end times are relative to it
+    std::chrono::steady_clock::time_point epoch;
+
+    // the ids of the labels written so far, by their address
+    std::unordered_map<const char*, uint32_t> labels;
+
+    // the buffers of all threads that logged a binary event
+    std::vector<std::unique_ptr<Buffer>> buffers;
+
+    static std::atomic<uint64_t>& getLogCounter() {
+        static std::atomic<uint64_t> counter(0);
+        return counter;
+    }
+
+    void putRecord(const Record& record) {
+        char buf[32];
+        for(int i=0; i<4; i++) {
+            buf[i] = (char)(record.label >> (8 * i));
+            buf[4 + i] = (char)(record.kind >> (8 * i));
+        }
+        for(int i=0; i<8; i++) {
+            buf[8 + i] = (char)(record.value >> (8 * i));
+            buf[16 + i] = (char)(record.seq >> (8 * i));
+            buf[24 + i] = (char)(record.time >> (8 * i));
+        }
+        out.write(buf, sizeof(buf));
+    }
+
+    // requires the output lock
+    uint32_t getLabel(const char* label) {
+        auto pos = labels.find(label);
+        if (pos != labels.end()) {
+            return pos->second;
+        }
+        uint32_t id = labels.size();
+        labels[label] = id;
+        size_t len = strlen(label);
+        putRecord(Record{id, LABEL, len, 0, NO_TIME});
+        out.write(label, len);
+        return id;
+    }
+
+    // requires the output lock
+    void flush(Buffer& buffer) {
+        for(const Record& record : buffer.records) {
+            putRecord(record);
+        }
+        buffer.records.clear();
+    }
+
+    // writes the buffers holding an event older than the given sequence
+    // number; requires the output lock
+    void flushOlder(uint64_t oldest) {
+        for(auto& buffer : buffers) {
+            buffer->lock.lock();
+            if (!buffer->records.empty() && buffer->records.front().seq < oldest) {
+                flush(*buffer);
+            }
+            buffer->lock.unlock();
+        }
+    }
+
+    // the buffer of the calling thread
+    Buffer& getBuffer() {
+        static thread_local uint64_t owner = 0;
+        static thread_local Buffer* buffer = nullptr;
+        if (owner != log_id) {
+            auto lease = getOutputLock().acquire();
+            (void) lease; // avoid warning
+            buffers.push_back(std::unique_ptr<Buffer>(new Buffer()));
+            buffer = buffers.back().get();
+            buffer->records.reserve(BUFFER_SIZE);
+            owner = log_id;
+        }
+        return *buffer;
+    }
+
+    void logRecord(const char* label, uint32_t kind, uint64_t value, uint64_t time) {
+        Buffer& buffer = getBuffer();
+        uint32_t id;
+        auto pos = buffer.labels.find(label);
+        if (pos != buffer.labels.end()) {
+            id = pos->second;
+        } else {
+            auto lease = getOutputLock().acquire();
+            (void) lease; // avoid warning
+            id = getLabel(label);
+            buffer.labels[label] = id;
+        }
+        uint64_t next = seq++;
+        // the buffer lock is never held while waiting for the output lock
+        buffer.lock.lock();
+        buffer.records.push_back(Record{id, kind, value, next, time});
+        bool full = buffer.records.size() == BUFFER_SIZE || next - buffer.records.front().seq >= MAX_LAG;
+        buffer.lock.unlock();
+        bool end = kind == TIME && strncmp(label, "@t-stratum;", 11) == 0;
+        if (full || end) {
+            auto lease = getOutputLock().acquire();
+            (void) lease; // avoid warning
+            buffer.lock.lock();
+            flush(buffer);
+            buffer.lock.unlock();
+            if (end) {
+                flushOlder(next + 1);
+            } else if (next >= MAX_LAG) {
+                flushOlder(next + 1 - MAX_LAG);
+            }
+        }
+    }
+
+public:
+
+    ProfileLog(const std::string& fname, bool binary = false)
+        : out(fname, binary ? std::ios::out | std::ios::binary : std::ios::out), binary(binary),
+          log_id(++getLogCounter()), seq(0), epoch(std::chrono::steady_clock::now()) {
+        if (binary) {
+            const char header[8] = { 'S', 'P', 'R', 'B', 1, 0, 0, 0 };   // magic, version
+            out.write(header, sizeof(header));
+        } else {
+            out << "@start-debug\n";
+        }
+    }
+
+    /**
+     * Writes the events still buffered; no thread may log concurrently.
+     */
+    ~ProfileLog() {
+        auto lease = getOutputLock().acquire();
+        (void) lease; // avoid warning
+        for(auto& buffer : buffers) {
+            flush(*buffer);
+        }
+    }
+
+    bool is_open() const {
+        return out.is_open();
+    }
+
+    /**
+     * Logs a duration in seconds, e.g., the runtime of a rule.
+     */
+    void logTime(const char* label, double seconds) {
+        if (binary) {
+            uint64_t bits;
+            memcpy(&bits, &seconds, sizeof(bits));
+            logRecord(label, TIME, bits, NO_TIME);
+            return;
+        }
+        auto lease = getOutputLock().acquire();
+        (void) lease; // avoid warning
+        out << label << seconds << "\n";
+    }
+
+    /**
+     * Logs the duration of a timer together with its start and end time.
+     */
+    void logTime(const char* label, std::chrono::steady_clock::time_point start,
+            std::chrono::steady_clock::time_point end) {
+        typedef std::chrono::duration<double> seconds;
+        double duration = std::chrono::duration_cast<seconds>(end - start).count();
+        if (binary) {
+            uint64_t bits;
+            memcpy(&bits, &duration, sizeof(bits));
+            auto offset = std::chrono::duration_cast<std::chrono::nanoseconds>(start - epoch).count();
+            logRecord(label, TIME, bits, offset < 0 ? 0 : offset);
+            return;
+        }
+        auto lease = getOutputLock().acquire();
+        (void) lease; // avoid warning
+        out << label << duration << ";"
+            << std::chrono::duration_cast<seconds>(start - epoch).count() << ";"
+            << std::chrono::duration_cast<seconds>(end - epoch).count() << "\n";
+    }
+
+    /**
+     * Logs a number of tuples, e.g., the size of a relation.
+     */
+    void logSize(const char* label, uint64_t size) {
+        if (binary) {
+            logRecord(label, SIZE, size, NO_TIME);
+            return;
+        }
+        auto lease = getOutputLock().acquire();
+        (void) lease; // avoid warning
+        out << label << size << "\n";
+    }
+};
+
+
 /**
  * The class utilized to times for the souffle profiling tool. This class
  * is utilized by both -- the interpreted and compiled version -- to conduct
@@ -71,21 +342,35 @@ class RamLogger {
 	// the start time
 	time start;
 
-	// an output stream to report to
-	std::ostream& out;
+	// an output stream to report to, if no profile log is given
+	std::ostream* out;
+
+	// the profile log to report to
+	ProfileLog* log;
 
 public:
 
-	RamLogger(const char* label, std::ostream& out = std::cout) : label(label), out(out) {
+	RamLogger(const char* label, std::ostream& out = std::cout) : label(label), out(&out), log(nullptr) {
+		start = clock::now();
+	}
+
+	RamLogger(const char* label, ProfileLog& log) : label(label), out(nullptr), log(&log) {
 		start = clock::now();
 	}
 
 	~RamLogger() {
-		auto duration = clock::now() - start;
+		time end = clock::now();
+
+		if (log) {
+			log->logTime(label, start, end);
+			return;
+		}
+
+		double seconds = std::chrono::duration_cast<std::chrono::duration<double>>(end - start).count();
 
         auto leas = getOutputLock().acquire();
         (void) leas; // avoid warning
-        out << label << std::chrono::duration_cast<std::chrono::duration<double>>(duration).count() << "\n";
+        *out << label << seconds << "\n";
 	}
 
 };
@@ -1055,6 +1055,7 @@ std::unique_ptr<RamStatement> RamTranslator::translateProgram(const AstTranslati
 
     std::unique_ptr<RamStatement> comp;
 
+    int stratum = 0;
     for (const RelationScheduleStep &step : relationSchedule->getSchedule()) {
         const std::set<const AstRelation *> &scc = step.getComputedRelations();
         std::unique_ptr<RamStatement> stmt;
@@ -1066,6 +1067,14 @@ std::unique_ptr<RamStatement> RamTranslator::translateProgram(const AstTranslati
         } else {
             stmt = translateRecursiveRelation(scc, translationUnit.getProgram(), recursiveClauses, typeEnv);
         }
+
+        // add logging entry for the evaluation of the stratum
+        if (stmt && logging) {
+            std::ostringstream ost;
+            ost << "@t-stratum;" << stratum << ";";
+            stmt = std::unique_ptr<RamStatement>(new RamLogTimer(std::move(stmt), ost.str()));
+        }
+        stratum++;
         appendStmt(comp, std::move(stmt));
 
         /* Drop the tables of all expired relations to save memory */
@@ -98,6 +98,7 @@ void helpPage(bool error, int argc, char**argv)
     std::cerr << "    -o <FILE>, --dl-program=<FILE> Write executable program to <FILE> (without executing it)\n";
     std::cerr << "\n";
     std::cerr << "    -p<FILE>, --profile=<FILE>     Enable profiling and write profile data to <FILE>\n";
+    std::cerr << "    --binary-profile               Write profile data in the binary format of souffleprof\n";
     std::cerr << "    -d, --debug                    Enable debug mode\n";
     std::cerr << "\n";
     std::cerr << "    --debug-report=<FILE>          Write debugging output to HTML report\n";
@@ -170,10 +171,12 @@ int main(int argc, char **argv)
     bool compile = false;     /* flag for enabling compilation */
     bool tune = false;        /* flag for enabling / disabling the rule scheduler */
     bool logging = false;     /* flag for profiling */ 
+    bool binaryProfile = false; /* flag for the binary profile format */
     bool debug = false;       /* flag for enabling debug mode */
 
     enum {optAutoSchedule=1,
-          optDebugReportFile=2};
+          optDebugReportFile=2,
+          optBinaryProfile=3};
 
     // long options
     option longOptions[] = {
@@ -190,6 +193,7 @@ int main(int argc, char **argv)
         { "debug-report", true, nullptr, optDebugReportFile },
         //
         { "profile", true, nullptr, 'p' },
+        { "binary-profile", false, nullptr, optBinaryProfile },
         //
         { "debug", false, nullptr, 'd' },
         // 
@@ -260,6 +264,11 @@ int main(int argc, char **argv)
                 profile = optarg;
                 break;
 
+                /* Write the profile log in the binary format */
+            case optBinaryProfile:
+                binaryProfile = true;
+                break;
+
                 /* Enable debug mode */
             case 'd':
                 debug = true;
@@ -432,6 +441,7 @@ int main(int argc, char **argv)
     config.setNumThreads(num_threads);
     config.setLogging(logging);
     config.setProfileName(profile);
+    config.setBinaryProfile(binaryProfile);
     config.setDebug(debug);
 
     std::string dir = dirname(argv[0]); 